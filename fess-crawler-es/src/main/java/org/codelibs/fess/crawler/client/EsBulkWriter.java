@@ -0,0 +1,281 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.client;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.codelibs.fess.crawler.exception.EsAccessException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse.Failure;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * EsBulkWriter buffers write requests and sends them to Elasticsearch in background.
+ * Buffered requests are sent when the number of requests, the size of requests or
+ * the flush interval is reached. If concurrentRequests bulk requests are in flight,
+ * {@link #add(DocWriteRequest)} blocks until one of them finishes.
+ *
+ * @author shinsuke
+ *
+ */
+public class EsBulkWriter {
+    private static final Logger logger = LoggerFactory.getLogger(EsBulkWriter.class);
+
+    protected final EsClient esClient;
+
+    protected List<FailureListener> failureListenerList = new CopyOnWriteArrayList<>();
+
+    protected int bulkActions = 1000;
+
+    protected long bulkSize = 5L * 1024L * 1024L;
+
+    protected long flushInterval = 1000L;
+
+    protected int concurrentRequests = 1;
+
+    protected long flushTimeout = 60 * 1000L;
+
+    protected RefreshPolicy refreshPolicy = RefreshPolicy.NONE;
+
+    protected volatile BulkProcessor bulkProcessor;
+
+    protected volatile boolean closed;
+
+    // the number of bulk requests which are sent but not finished
+    protected int inFlightCount;
+
+    protected final Object inFlightLock = new Object();
+
+    public EsBulkWriter(final EsClient esClient) {
+        this.esClient = esClient;
+    }
+
+    public void addFailureListener(final FailureListener listener) {
+        failureListenerList.add(listener);
+    }
+
+    /**
+     * Adds a write request to the buffer.
+     *
+     * @param request index, update or delete request
+     */
+    public void add(final DocWriteRequest<?> request) {
+        getBulkProcessor().add(request);
+    }
+
+    /**
+     * Sends buffered requests and waits until all sent requests finish.
+     *
+     * @return false if sent requests do not finish within flushTimeout
+     */
+    public boolean flush() {
+        final BulkProcessor processor = bulkProcessor;
+        if (processor == null) {
+            return true;
+        }
+        processor.flush();
+
+        final long timeoutTime = System.currentTimeMillis() + flushTimeout;
+        synchronized (inFlightLock) {
+            while (inFlightCount > 0) {
+                final long waitTime = timeoutTime - System.currentTimeMillis();
+                if (waitTime <= 0) {
+                    logger.warn("{} bulk requests did not finish in {}ms.", inFlightCount, flushTimeout);
+                    return false;
+                }
+                try {
+                    inFlightLock.wait(waitTime);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        final BulkProcessor processor = bulkProcessor;
+        if (processor != null) {
+            try {
+                if (!processor.awaitClose(flushTimeout, TimeUnit.MILLISECONDS)) {
+                    logger.warn("Bulk requests did not finish in {}ms.", flushTimeout);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    protected BulkProcessor getBulkProcessor() {
+        if (bulkProcessor == null) {
+            synchronized (this) {
+                if (closed) {
+                    throw new EsAccessException("EsBulkWriter is closed.");
+                }
+                if (bulkProcessor == null) {
+                    bulkProcessor = createBulkProcessor();
+                }
+            }
+        } else if (closed) {
+            throw new EsAccessException("EsBulkWriter is closed.");
+        }
+        return bulkProcessor;
+    }
+
+    protected BulkProcessor createBulkProcessor() {
+        return BulkProcessor.builder((request, listener) -> {
+            request.setRefreshPolicy(refreshPolicy);
+            esClient.bulk(request, listener);
+        }, new BulkListener())//
+                .setBulkActions(bulkActions)//
+                .setBulkSize(new ByteSizeValue(bulkSize))//
+                .setFlushInterval(TimeValue.timeValueMillis(flushInterval))//
+                .setConcurrentRequests(concurrentRequests)//
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff())//
+                .build();
+    }
+
+    protected void notifyFailure(final DocWriteRequest<?> request, final Failure failure) {
+        if (failure.getStatus() == RestStatus.CONFLICT) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} already exists in {}.", failure.getId(), failure.getIndex());
+            }
+        } else {
+            logger.warn("Failed to write " + failure.getId() + " to " + failure.getIndex() + ": " + failure.getMessage());
+        }
+        failureListenerList.forEach(l -> {
+            try {
+                l.onFailure(request, failure);
+            } catch (final Exception e) {
+                logger.warn("Failed to invoke " + l, e);
+            }
+        });
+    }
+
+    protected void finishBulk() {
+        synchronized (inFlightLock) {
+            inFlightCount--;
+            inFlightLock.notifyAll();
+        }
+    }
+
+    protected class BulkListener implements BulkProcessor.Listener {
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see org.elasticsearch.action.bulk.BulkProcessor.Listener#beforeBulk(long, org.elasticsearch.action.bulk.BulkRequest)
+         */
+        @Override
+        public void beforeBulk(final long executionId, final BulkRequest request) {
+            synchronized (inFlightLock) {
+                inFlightCount++;
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see org.elasticsearch.action.bulk.BulkProcessor.Listener#afterBulk(long, org.elasticsearch.action.bulk.BulkRequest, org.elasticsearch.action.bulk.BulkResponse)
+         */
+        @Override
+        public void afterBulk(final long executionId, final BulkRequest request, final BulkResponse response) {
+            try {
+                if (response.hasFailures()) {
+                    final List<DocWriteRequest<?>> requests = request.requests();
+                    for (final BulkItemResponse itemResponse : response.getItems()) {
+                        if (itemResponse.isFailed()) {
+                            notifyFailure(requests.get(itemResponse.getItemId()), itemResponse.getFailure());
+                        }
+                    }
+                }
+            } finally {
+                finishBulk();
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see org.elasticsearch.action.bulk.BulkProcessor.Listener#afterBulk(long, org.elasticsearch.action.bulk.BulkRequest, java.lang.Throwable)
+         */
+        @Override
+        public void afterBulk(final long executionId, final BulkRequest request, final Throwable failure) {
+            try {
+                final Exception cause = failure instanceof Exception ? (Exception) failure : new EsAccessException(failure.getMessage(), failure);
+                for (final DocWriteRequest<?> docRequest : request.requests()) {
+                    notifyFailure(docRequest, new Failure(docRequest.index(), docRequest.type(), docRequest.id(), cause));
+                }
+            } finally {
+                finishBulk();
+            }
+        }
+    }
+
+    public interface FailureListener {
+        void onFailure(DocWriteRequest<?> request, Failure failure);
+    }
+
+    public void setBulkActions(final int bulkActions) {
+        this.bulkActions = bulkActions;
+    }
+
+    public void setBulkSize(final long bulkSize) {
+        this.bulkSize = bulkSize;
+    }
+
+    public void setFlushInterval(final long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public void setConcurrentRequests(final int concurrentRequests) {
+        this.concurrentRequests = concurrentRequests;
+    }
+
+    public void setFlushTimeout(final long flushTimeout) {
+        this.flushTimeout = flushTimeout;
+    }
+
+    public void setRefreshPolicy(final RefreshPolicy refreshPolicy) {
+        this.refreshPolicy = refreshPolicy;
+    }
+}
@@ -19,7 +19,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 
 import javax.annotation.PreDestroy;
@@ -119,6 +124,9 @@ public class EsClient implements Client {
 
     protected String[] targetIndices;
 
+    // schedules retries of async requests
+    protected volatile ScheduledExecutorService retryExecutor;
+
     public EsClient() {
         address = System.getProperty(HTTP_ADDRESS, "localhost:9200").trim();
         final String targets = System.getProperty(TARGET_INDICES);
@@ -140,7 +148,7 @@ public class EsClient implements Client {
     }
 
     public void connect() {
-        destroy();
+        disconnect();
         client = createClient();
 
         final ClusterHealthResponse healthResponse =
@@ -187,8 +195,87 @@ public class EsClient implements Client {
         }
     }
 
+    /**
+     * Invokes an async request and retries it if it fails.
+     * Unlike {@link #get(Function)}, a calling thread is not blocked while
+     * waiting for a response or a retry.
+     *
+     * @param func a function to execute a request with a given listener
+     * @return a future of the response
+     */
+    public <T> CompletableFuture<T> getAsync(final BiConsumer<EsClient, ActionListener<T>> func) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        invokeAsync(func, future, 0);
+        return future;
+    }
+
+    protected <T> void invokeAsync(final BiConsumer<EsClient, ActionListener<T>> func, final CompletableFuture<T> future,
+            final int retryCount) {
+        final CompletableFuture<T> attempt = new CompletableFuture<>();
+        attempt.orTimeout(connTimeout, TimeUnit.MILLISECONDS).whenComplete((response, t) -> {
+            if (t == null) {
+                future.complete(response);
+            } else {
+                retryAsync(func, future, retryCount, t);
+            }
+        });
+        try {
+            func.accept(this, ActionListener.wrap(attempt::complete, attempt::completeExceptionally));
+        } catch (final Exception e) {
+            attempt.completeExceptionally(e);
+        }
+    }
+
+    protected <T> void retryAsync(final BiConsumer<EsClient, ActionListener<T>> func, final CompletableFuture<T> future,
+            final int retryCount, final Throwable t) {
+        if (t instanceof IndexNotFoundException || t instanceof VersionConflictEngineException) {
+            logger.debug(t.getClass().getName() + " occurs.", t);
+            future.completeExceptionally(t);
+            return;
+        }
+        if (retryCount > maxRetryCount) {
+            future.completeExceptionally(t);
+            return;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Failed to invoke async request. count:{}", retryCount, t);
+        }
+
+        final long delay = RandomUtils.nextLong(retryInterval + retryCount * 1000L, retryInterval + retryCount * 1000L * 2L);
+        try {
+            getRetryExecutor().schedule(() -> invokeAsync(func, future, retryCount + 1), delay, TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException e) {
+            future.completeExceptionally(t);
+        }
+    }
+
+    protected ScheduledExecutorService getRetryExecutor() {
+        if (retryExecutor == null) {
+            synchronized (this) {
+                if (retryExecutor == null) {
+                    retryExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                        final Thread thread = new Thread(r, "EsClientRetry");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return retryExecutor;
+    }
+
     @PreDestroy
     public void destroy() {
+        disconnect();
+        synchronized (this) {
+            if (retryExecutor != null) {
+                retryExecutor.shutdownNow();
+                retryExecutor = null;
+            }
+        }
+    }
+
+    protected void disconnect() {
         if (client != null) {
             try {
                 client.close();
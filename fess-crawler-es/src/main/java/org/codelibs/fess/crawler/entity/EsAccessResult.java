@@ -15,12 +15,17 @@
  */
 package org.codelibs.fess.crawler.entity;
 
+import static org.codelibs.fess.crawler.util.EsXContentUtil.startObject;
+import static org.codelibs.fess.crawler.util.EsXContentUtil.textOrNull;
+
 import java.io.IOException;
+import java.util.function.Supplier;
 
 import org.codelibs.core.beans.util.BeanUtil;
 import org.codelibs.fess.crawler.service.impl.EsDataService;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
 import org.lastaflute.di.core.SingletonLaContainer;
 
 public class EsAccessResult extends AccessResultImpl<String> implements ToXContent {
@@ -51,6 +56,8 @@ public class EsAccessResult extends AccessResultImpl<String> implements ToXConte
 
     public static final String LAST_MODIFIED = "lastModified";
 
+    public static final String ETAG = "etag";
+
     public static final String ACCESS_RESULT_DATA = "accessResultData";
 
     private boolean initializedData = false;
@@ -90,6 +97,20 @@ public class EsAccessResult extends AccessResultImpl<String> implements ToXConte
         initializedData = true;
     }
 
+    /**
+     * Sets a loader of accessResultData.data if the data is not read from _source.
+     *
+     * @param dataLoader a loader of the data
+     */
+    public void setDataLoader(final Supplier<byte[]> dataLoader) {
+        if (initializedData && accessResultData instanceof EsAccessResultData) {
+            final EsAccessResultData esAccessResultData = (EsAccessResultData) accessResultData;
+            if (esAccessResultData.data == null) {
+                esAccessResultData.setDataLoader(dataLoader);
+            }
+        }
+    }
+
     @Override
     public XContentBuilder toXContent(final XContentBuilder builder, final Params params) throws IOException {
         builder.startObject();
@@ -129,6 +150,9 @@ public class EsAccessResult extends AccessResultImpl<String> implements ToXConte
         if (lastModified != null) {
             builder.field(LAST_MODIFIED, lastModified);
         }
+        if (etag != null) {
+            builder.field(ETAG, etag);
+        }
         if (accessResultData instanceof ToXContent) {
             builder.field(ACCESS_RESULT_DATA);
             ((ToXContent) accessResultData).toXContent(builder, params);
@@ -136,4 +160,72 @@ public class EsAccessResult extends AccessResultImpl<String> implements ToXConte
         builder.endObject();
         return builder;
     }
+
+    /**
+     * Reads an access result from _source.
+     *
+     * @param parser a parser on _source
+     * @return an access result without id
+     * @throws IOException if _source is not readable
+     */
+    public static EsAccessResult fromXContent(final XContentParser parser) throws IOException {
+        startObject(parser);
+        final EsAccessResult accessResult = new EsAccessResult();
+        String fieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                fieldName = parser.currentName();
+            } else if (token.isValue()) {
+                switch (fieldName) {
+                case SESSION_ID:
+                    accessResult.sessionId = textOrNull(parser);
+                    break;
+                case RULE_ID:
+                    accessResult.ruleId = textOrNull(parser);
+                    break;
+                case URL:
+                    accessResult.url = textOrNull(parser);
+                    break;
+                case PARENT_URL:
+                    accessResult.parentUrl = textOrNull(parser);
+                    break;
+                case STATUS:
+                    accessResult.status = parser.intValue();
+                    break;
+                case HTTP_STATUS_CODE:
+                    accessResult.httpStatusCode = parser.intValue();
+                    break;
+                case METHOD:
+                    accessResult.method = textOrNull(parser);
+                    break;
+                case MIME_TYPE:
+                    accessResult.mimeType = textOrNull(parser);
+                    break;
+                case CREATE_TIME:
+                    accessResult.createTime = parser.longValue();
+                    break;
+                case EXECUTION_TIME:
+                    accessResult.executionTime = parser.intValue();
+                    break;
+                case CONTENT_LENGTH:
+                    accessResult.contentLength = parser.longValue();
+                    break;
+                case LAST_MODIFIED:
+                    accessResult.lastModified = parser.longValue();
+                    break;
+                case ETAG:
+                    accessResult.etag = textOrNull(parser);
+                    break;
+                default:
+                    break;
+                }
+            } else if (token == XContentParser.Token.START_OBJECT && ACCESS_RESULT_DATA.equals(fieldName)) {
+                accessResult.setAccessResultData(EsAccessResultData.fromXContent(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return accessResult;
+    }
 }
@@ -15,12 +15,22 @@
  */
 package org.codelibs.fess.crawler.entity;
 
+import static org.codelibs.fess.crawler.util.EsXContentUtil.startObject;
+import static org.codelibs.fess.crawler.util.EsXContentUtil.textOrNull;
+
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.codelibs.core.misc.Base64Util;
+import org.codelibs.fess.crawler.exception.CrawlerSystemException;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
 
 public class EsAccessResultData extends AccessResultDataImpl<String> implements ToXContent {
 
@@ -32,6 +42,14 @@ public class EsAccessResultData extends AccessResultDataImpl<String> implements
 
     public static final String ENCODING = "encoding";
 
+    // how the data field is compressed in the index
+    public static final String COMPRESSION = "compression";
+
+    public static final String DEFLATE = "deflate";
+
+    // loads data if it's not fetched from the index
+    protected Supplier<byte[]> dataLoader;
+
     public EsAccessResultData() {
         super();
     }
@@ -41,8 +59,87 @@ public class EsAccessResultData extends AccessResultDataImpl<String> implements
         setEncoding((String) src.get(ENCODING));
         final String dataStr = (String) src.get(DATA);
         if (dataStr != null) {
-            setData(Base64Util.decode(dataStr));
+            setData(decode(Base64Util.decode(dataStr), (String) src.get(COMPRESSION)));
+        }
+    }
+
+    /**
+     * Reads access result data from _source.
+     *
+     * @param parser a parser on accessResultData
+     * @return access result data, of which data is null if it's not in _source
+     * @throws IOException if _source is not readable
+     */
+    public static EsAccessResultData fromXContent(final XContentParser parser) throws IOException {
+        startObject(parser);
+        final EsAccessResultData accessResultData = new EsAccessResultData();
+        byte[] bytes = null;
+        String compression = null;
+        String fieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                fieldName = parser.currentName();
+            } else if (token.isValue()) {
+                switch (fieldName) {
+                case TRANSFORMER_NAME:
+                    accessResultData.transformerName = textOrNull(parser);
+                    break;
+                case DATA:
+                    bytes = parser.binaryValue();
+                    break;
+                case COMPRESSION:
+                    compression = textOrNull(parser);
+                    break;
+                case ENCODING:
+                    accessResultData.encoding = textOrNull(parser);
+                    break;
+                default:
+                    break;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (bytes != null) {
+            accessResultData.data = decode(bytes, compression);
+        }
+        return accessResultData;
+    }
+
+    protected static byte[] decode(final byte[] bytes, final String compression) {
+        if (compression == null) {
+            return bytes;
+        } else if (DEFLATE.equals(compression)) {
+            return inflate(bytes);
+        }
+        throw new CrawlerSystemException("Unsupported compression: " + compression);
+    }
+
+    @Override
+    public byte[] getData() {
+        final Supplier<byte[]> loader = dataLoader;
+        if (loader != null) {
+            data = loader.get();
+            dataLoader = null;
         }
+        return data;
+    }
+
+    @Override
+    public void setData(final byte[] data) {
+        this.data = data;
+        dataLoader = null;
+    }
+
+    @Override
+    public String getDataAsString() {
+        getData();
+        return super.getDataAsString();
+    }
+
+    public void setDataLoader(final Supplier<byte[]> dataLoader) {
+        this.dataLoader = dataLoader;
     }
 
     @Override
@@ -51,8 +148,19 @@ public class EsAccessResultData extends AccessResultDataImpl<String> implements
         if (transformerName != null) {
             builder.field(TRANSFORMER_NAME, transformerName);
         }
+        final byte[] data = getData();
         if (data != null) {
-            builder.field(DATA, data);
+            if (DEFLATE.equals(params.param(COMPRESSION))) {
+                final byte[] compressed = deflate(data);
+                if (compressed.length < data.length) {
+                    builder.field(DATA, compressed);
+                    builder.field(COMPRESSION, DEFLATE);
+                } else {
+                    builder.field(DATA, data);
+                }
+            } else {
+                builder.field(DATA, data);
+            }
         }
         if (encoding != null) {
             builder.field(ENCODING, encoding);
@@ -61,4 +169,42 @@ public class EsAccessResultData extends AccessResultDataImpl<String> implements
         return builder;
     }
 
+    protected static byte[] deflate(final byte[] data) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+            final byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                final int len = deflater.deflate(buf);
+                out.write(buf, 0, len);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    protected static byte[] inflate(final byte[] data) {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            final byte[] buf = new byte[8192];
+            while (!inflater.finished()) {
+                final int len = inflater.inflate(buf);
+                if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new CrawlerSystemException("Compressed data is truncated.");
+                }
+                out.write(buf, 0, len);
+            }
+            return out.toByteArray();
+        } catch (final DataFormatException e) {
+            throw new CrawlerSystemException("Failed to inflate data.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
 }
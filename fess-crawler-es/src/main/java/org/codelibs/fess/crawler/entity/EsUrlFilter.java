@@ -15,10 +15,14 @@
  */
 package org.codelibs.fess.crawler.entity;
 
+import static org.codelibs.fess.crawler.util.EsXContentUtil.startObject;
+import static org.codelibs.fess.crawler.util.EsXContentUtil.textOrNull;
+
 import java.io.IOException;
 
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
 
 public class EsUrlFilter implements ToXContent {
 
@@ -84,4 +88,40 @@ public class EsUrlFilter implements ToXContent {
         return builder;
     }
 
+    /**
+     * Reads an url filter from _source.
+     *
+     * @param parser a parser on _source
+     * @return an url filter without id
+     * @throws IOException if _source is not readable
+     */
+    public static EsUrlFilter fromXContent(final XContentParser parser) throws IOException {
+        startObject(parser);
+        final EsUrlFilter urlFilter = new EsUrlFilter();
+        String fieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                fieldName = parser.currentName();
+            } else if (token.isValue()) {
+                switch (fieldName) {
+                case SESSION_ID:
+                    urlFilter.setSessionId(textOrNull(parser));
+                    break;
+                case FILTER_TYPE:
+                    urlFilter.setFilterType(textOrNull(parser));
+                    break;
+                case URL:
+                    urlFilter.setUrl(textOrNull(parser));
+                    break;
+                default:
+                    break;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return urlFilter;
+    }
+
 }
@@ -15,10 +15,14 @@
  */
 package org.codelibs.fess.crawler.entity;
 
+import static org.codelibs.fess.crawler.util.EsXContentUtil.startObject;
+import static org.codelibs.fess.crawler.util.EsXContentUtil.textOrNull;
+
 import java.io.IOException;
 
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
 
 public class EsUrlQueue extends UrlQueueImpl<String> implements ToXContent {
 
@@ -36,6 +40,10 @@ public class EsUrlQueue extends UrlQueueImpl<String> implements ToXContent {
 
     public static final String LAST_MODIFIED = "lastModified";
 
+    public static final String ETAG = "etag";
+
+    public static final String MIME_TYPE = "mimeType";
+
     public static final String CREATE_TIME = "createTime";
 
     @Override
@@ -59,6 +67,12 @@ public class EsUrlQueue extends UrlQueueImpl<String> implements ToXContent {
         if (lastModified != null) {
             builder.field(LAST_MODIFIED, lastModified);
         }
+        if (etag != null) {
+            builder.field(ETAG, etag);
+        }
+        if (mimeType != null) {
+            builder.field(MIME_TYPE, mimeType);
+        }
         if (createTime != null) {
             builder.field(CREATE_TIME, createTime);
         }
@@ -66,4 +80,58 @@ public class EsUrlQueue extends UrlQueueImpl<String> implements ToXContent {
         return builder;
     }
 
+    /**
+     * Reads an url queue from _source.
+     *
+     * @param parser a parser on _source
+     * @return an url queue without id
+     * @throws IOException if _source is not readable
+     */
+    public static EsUrlQueue fromXContent(final XContentParser parser) throws IOException {
+        startObject(parser);
+        final EsUrlQueue urlQueue = new EsUrlQueue();
+        String fieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                fieldName = parser.currentName();
+            } else if (token.isValue()) {
+                switch (fieldName) {
+                case SESSION_ID:
+                    urlQueue.sessionId = textOrNull(parser);
+                    break;
+                case METHOD:
+                    urlQueue.method = textOrNull(parser);
+                    break;
+                case URL:
+                    urlQueue.url = textOrNull(parser);
+                    break;
+                case PARENT_URL:
+                    urlQueue.parentUrl = textOrNull(parser);
+                    break;
+                case DEPTH:
+                    urlQueue.depth = parser.intValue();
+                    break;
+                case LAST_MODIFIED:
+                    urlQueue.lastModified = parser.longValue();
+                    break;
+                case ETAG:
+                    urlQueue.etag = textOrNull(parser);
+                    break;
+                case MIME_TYPE:
+                    urlQueue.mimeType = textOrNull(parser);
+                    break;
+                case CREATE_TIME:
+                    urlQueue.createTime = parser.longValue();
+                    break;
+                default:
+                    break;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return urlQueue;
+    }
+
 }
@@ -24,10 +24,17 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 import javax.annotation.Resource;
@@ -40,11 +47,14 @@ import org.codelibs.core.beans.util.BeanUtil;
 import org.codelibs.core.io.FileUtil;
 import org.codelibs.core.lang.StringUtil;
 import org.codelibs.core.security.MessageDigestUtil;
+import org.codelibs.fess.crawler.client.EsBulkWriter;
 import org.codelibs.fess.crawler.client.EsClient;
 import org.codelibs.fess.crawler.entity.EsAccessResult;
-import org.codelibs.fess.crawler.entity.EsAccessResultData;
+import org.codelibs.fess.crawler.entity.EsUrlFilter;
+import org.codelibs.fess.crawler.entity.EsUrlQueue;
 import org.codelibs.fess.crawler.exception.EsAccessException;
 import org.codelibs.fess.crawler.util.EsResultList;
+import org.codelibs.fess.crawler.util.EsXContentUtil;
 import org.elasticsearch.action.DocWriteRequest.OpType;
 import org.elasticsearch.action.DocWriteResponse.Result;
 import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
@@ -55,24 +65,41 @@ import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.GetRequestBuilder;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
 import org.elasticsearch.action.support.master.AcknowledgedResponse;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.IndexNotFoundException;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.reindex.AbstractBulkByScrollRequest;
+import org.elasticsearch.index.reindex.BulkByScrollResponse;
+import org.elasticsearch.index.reindex.DeleteByQueryAction;
+import org.elasticsearch.index.reindex.DeleteByQueryRequest;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
@@ -114,6 +141,12 @@ public abstract class AbstractCrawlerService {
 
     protected int scrollSize = 100;
 
+    protected boolean searchAfterEnabled = true;
+
+    protected int searchAfterSize = 1000;
+
+    protected boolean deleteByQueryEnabled = false;
+
     protected int bulkBufferSize = 10;
 
     protected int numberOfShards = 5;
@@ -122,6 +155,20 @@ public abstract class AbstractCrawlerService {
 
     protected int idPrefixLength = 445;
 
+    protected RefreshPolicy refreshPolicy = RefreshPolicy.IMMEDIATE;
+
+    protected long recentCacheExpiry = 60000L;
+
+    // ids written or deleted after the last refresh, with the time
+    protected final Map<String, Long> recentlyWrittenIdMap = new ConcurrentHashMap<>();
+
+    protected final Map<String, Long> recentlyDeletedIdMap = new ConcurrentHashMap<>();
+
+    protected volatile long lastPrunedTime = 0L;
+
+    // writes documents asynchronously if it's set
+    protected EsBulkWriter bulkWriter;
+
     protected EsClient getClient() {
         if (!esClient.connected()) {
             synchronized (esClient) {
@@ -199,7 +246,13 @@ public abstract class AbstractCrawlerService {
 
     protected XContentBuilder getXContentBuilder(final Object target) {
         try {
-            final XContentBuilder builder = jsonBuilder().value(target);
+            final XContentBuilder builder;
+            if (target instanceof ToXContent) {
+                // write fields directly without looking up a writer for the value
+                builder = ((ToXContent) target).toXContent(jsonBuilder(), getXContentParams());
+            } else {
+                builder = jsonBuilder().value(target);
+            }
             builder.flush();
             return builder;
         } catch (final IOException e) {
@@ -207,9 +260,17 @@ public abstract class AbstractCrawlerService {
         }
     }
 
+    protected ToXContent.Params getXContentParams() {
+        return ToXContent.EMPTY_PARAMS;
+    }
+
     protected RefreshResponse refresh() {
+        flushBulkWriter();
         try {
-            return getClient().get(c -> c.admin().indices().prepareRefresh(index).execute());
+            final RefreshResponse response = getClient().get(c -> c.admin().indices().prepareRefresh(index).execute());
+            recentlyWrittenIdMap.clear();
+            recentlyDeletedIdMap.clear();
+            return response;
         } catch (final Exception e) {
             throw new EsAccessException("Failed to refresh.", e);
         }
@@ -222,9 +283,17 @@ public abstract class AbstractCrawlerService {
         }
         final String id = getId(getSessionId(target), url);
         try (final XContentBuilder source = getXContentBuilder(target)) {
+            if (isBulkWriterEnabled()) {
+                bulkWriter.add(new IndexRequest(index).id(id).source(source).opType(opType));
+                setId(target, id);
+                addRecentlyWrittenId(id);
+                // the response is not available until the request is sent
+                return null;
+            }
             final IndexResponse response = getClient().get(c -> c.prepareIndex().setIndex(index).setId(id).setSource(source)
-                    .setOpType(opType).setRefreshPolicy(RefreshPolicy.IMMEDIATE).execute());
+                    .setOpType(opType).setRefreshPolicy(refreshPolicy).execute());
             setId(target, id);
+            addRecentlyWrittenId(id);
             return response;
         } catch (final Exception e) {
             throw new EsAccessException("Failed to insert " + id, e);
@@ -236,6 +305,12 @@ public abstract class AbstractCrawlerService {
     }
 
     protected <T> void insertAll(final List<T> list, final OpType opType, final boolean ignoreAlreadyExists) {
+        if (isBulkWriterEnabled()) {
+            // failures are reported to failure listeners of the writer
+            list.forEach(target -> insert(target, opType));
+            return;
+        }
+
         final List<T> bufferedList = new ArrayList<>(bulkBufferSize);
         final StringBuilder failureBuf = new StringBuilder(100);
         list.stream().forEach(target -> {
@@ -286,7 +361,7 @@ public abstract class AbstractCrawlerService {
 
     protected <T> BulkResponse doInsertAll(final List<T> list, final OpType opType) {
         try {
-            return getClient().get(c -> {
+            final BulkResponse response = getClient().get(c -> {
                 final BulkRequestBuilder bulkRequest = c.prepareBulk();
                 for (final T target : list) {
                     final String id = getId(getSessionId(target), getUrl(target));
@@ -296,23 +371,122 @@ public abstract class AbstractCrawlerService {
                     setId(target, id);
                 }
 
-                return bulkRequest.setRefreshPolicy(RefreshPolicy.IMMEDIATE).execute();
+                return bulkRequest.setRefreshPolicy(refreshPolicy).execute();
             });
+            for (final BulkItemResponse itemResponse : response.getItems()) {
+                if (!itemResponse.isFailed()) {
+                    addRecentlyWrittenId(itemResponse.getId());
+                }
+            }
+            return response;
         } catch (final Exception e) {
             throw new EsAccessException("Failed to insert " + list, e);
         }
     }
 
     protected boolean exists(final String sessionId, final String url) {
-        final String id = getId(sessionId, url);
         try {
-            final GetResponse response = getClient().get(c -> c.prepareGet(index, null, id).execute());
-            return response.isExists();
+            return join(existsAsync(sessionId, url));
         } catch (final Exception e) {
             throw new EsAccessException("Failed to check if " + sessionId + ":" + url + " exists.", e);
         }
     }
 
+    /**
+     * Checks if a document for a given url exists without blocking a calling thread.
+     *
+     * @param sessionId session id
+     * @param url url to check
+     * @return a future which is true if the document exists
+     */
+    protected CompletableFuture<Boolean> existsAsync(final String sessionId, final String url) {
+        final String id = getId(sessionId, url);
+        if (recentlyWrittenIdMap.containsKey(id)) {
+            return CompletableFuture.completedFuture(Boolean.TRUE);
+        }
+        return getClient().<GetResponse> getAsync((c, listener) -> c.prepareGet(index, null, id).execute(listener))
+                .thenApply(GetResponse::isExists);
+    }
+
+    /**
+     * Checks if documents for given urls exist by one multi-get request.
+     *
+     * @param sessionId session id
+     * @param urls urls to check
+     * @return a set of urls which exist
+     */
+    protected Set<String> existsAll(final String sessionId, final Collection<String> urls) {
+        try {
+            return join(existsAllAsync(sessionId, urls));
+        } catch (final EsAccessException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new EsAccessException("Failed to check if " + urls.size() + " urls exist in " + sessionId, e);
+        }
+    }
+
+    /**
+     * Checks if documents for given urls exist by one multi-get request without blocking a calling thread.
+     *
+     * @param sessionId session id
+     * @param urls urls to check
+     * @return a future of a set of urls which exist
+     */
+    protected CompletableFuture<Set<String>> existsAllAsync(final String sessionId, final Collection<String> urls) {
+        final Set<String> existingUrlSet = new HashSet<>();
+        if (urls.isEmpty()) {
+            return CompletableFuture.completedFuture(existingUrlSet);
+        }
+
+        final Map<String, String> idMap = new HashMap<>(urls.size() * 2);
+        for (final String url : urls) {
+            final String id = getId(sessionId, url);
+            if (recentlyWrittenIdMap.containsKey(id)) {
+                existingUrlSet.add(url);
+            } else {
+                idMap.put(id, url);
+            }
+        }
+        if (idMap.isEmpty()) {
+            return CompletableFuture.completedFuture(existingUrlSet);
+        }
+        return getClient().<MultiGetResponse> getAsync((c, listener) -> {
+            final MultiGetRequestBuilder builder = c.prepareMultiGet();
+            for (final String id : idMap.keySet()) {
+                builder.add(new MultiGetRequest.Item(index, id).fetchSourceContext(FetchSourceContext.DO_NOT_FETCH_SOURCE));
+            }
+            builder.execute(listener);
+        }).thenApply(response -> {
+            for (final MultiGetItemResponse itemResponse : response.getResponses()) {
+                if (itemResponse.isFailed()) {
+                    throw new EsAccessException("Failed to get " + itemResponse.getId() + ": " + itemResponse.getFailure().getMessage());
+                }
+                if (itemResponse.getResponse().isExists()) {
+                    existingUrlSet.add(idMap.get(itemResponse.getId()));
+                }
+            }
+            return existingUrlSet;
+        });
+    }
+
+    /**
+     * Waits for a given future and throws its cause if it fails.
+     *
+     * @param future future
+     * @return the result
+     */
+    protected <T> T join(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new EsAccessException(cause.getMessage(), cause);
+        }
+    }
+
     public int getCount(final Consumer<SearchRequestBuilder> callback) {
         return (int) getClient().get(c -> {
             final SearchRequestBuilder builder = c.prepareSearch(index).setSize(0).setTrackTotalHits(true);
@@ -322,25 +496,76 @@ public abstract class AbstractCrawlerService {
     }
 
     protected <T> T get(final Class<T> clazz, final String sessionId, final String url) {
+        return get(clazz, sessionId, url, null);
+    }
+
+    /**
+     * Gets a document without fields which match given patterns.
+     *
+     * @param clazz entity class
+     * @param sessionId session id
+     * @param url url
+     * @param sourceExcludes field patterns to exclude from _source, or null to get all fields
+     * @return an entity, or null if it's not found
+     */
+    protected <T> T get(final Class<T> clazz, final String sessionId, final String url, final String[] sourceExcludes) {
         final String id = getId(sessionId, url);
-        final GetResponse response = getClient().get(c -> c.prepareGet().setIndex(index).setId(id).execute());
-        if (response.isExists()) {
-            final Map<String, Object> source = response.getSource();
-            final T bean = BeanUtil.copyMapToNewBean(source, clazz, option -> {
-                option.converter(new EsTimestampConverter(), timestampFields).excludeWhitespace();
-                option.exclude(EsAccessResult.ACCESS_RESULT_DATA);
-            });
-            @SuppressWarnings("unchecked")
-            final Map<String, Object> data = (Map<String, Object>) source.get(EsAccessResult.ACCESS_RESULT_DATA);
-            if (data != null) {
-                ((EsAccessResult) bean).setAccessResultData(new EsAccessResultData(data));
+        if (recentlyWrittenIdMap.containsKey(id)) {
+            // the document may be in the buffer of the bulk writer
+            flushBulkWriter();
+        }
+        final GetResponse response = getClient().get(c -> {
+            final GetRequestBuilder builder = c.prepareGet().setIndex(index).setId(id);
+            if (sourceExcludes != null) {
+                builder.setFetchSource(null, sourceExcludes);
             }
+            return builder.execute();
+        });
+        if (response.isExists()) {
+            final T bean = parseSource(clazz, response.getSourceAsBytesRef());
             setId(bean, id);
             return bean;
         }
         return null;
     }
 
+    /**
+     * Reads an entity from _source bytes.
+     *
+     * @param clazz entity class
+     * @param source _source of a document
+     * @return an entity without id
+     */
+    protected <T> T parseSource(final Class<T> clazz, final BytesReference source) {
+        try (XContentParser parser = EsXContentUtil.createParser(source)) {
+            return clazz.cast(parseEntity(clazz, parser));
+        } catch (final IOException e) {
+            throw new EsAccessException("Failed to parse " + clazz.getSimpleName() + ".", e);
+        }
+    }
+
+    /**
+     * Reads an entity with a field mapper of the entity.
+     * An entity without the mapper is copied from a map of _source.
+     *
+     * @param clazz entity class
+     * @param parser a parser on _source
+     * @return an entity without id
+     * @throws IOException if _source is not readable
+     */
+    protected Object parseEntity(final Class<?> clazz, final XContentParser parser) throws IOException {
+        if (clazz == EsUrlQueue.class) {
+            return EsUrlQueue.fromXContent(parser);
+        } else if (clazz == EsAccessResult.class) {
+            return EsAccessResult.fromXContent(parser);
+        } else if (clazz == EsUrlFilter.class) {
+            return EsUrlFilter.fromXContent(parser);
+        }
+        return BeanUtil.copyMapToNewBean(parser.map(), clazz, option -> {
+            option.converter(new EsTimestampConverter(), timestampFields).excludeWhitespace();
+        });
+    }
+
     protected <T> List<T> getList(final Class<T> clazz, final String sessionId, final QueryBuilder queryBuilder, final Integer from,
             final Integer size, final SortBuilder<?> sortBuilder) {
         return getList(clazz, builder -> {
@@ -379,6 +604,25 @@ public abstract class AbstractCrawlerService {
             callback.accept(builder);
             return builder.execute();
         });
+        return createResultList(clazz, response);
+    }
+
+    /**
+     * Searches documents without blocking a calling thread.
+     *
+     * @param clazz entity class
+     * @param callback a callback to build a search request
+     * @return a future of found entities
+     */
+    protected <T> CompletableFuture<List<T>> getListAsync(final Class<T> clazz, final Consumer<SearchRequestBuilder> callback) {
+        return getClient().<SearchResponse> getAsync((c, listener) -> {
+            final SearchRequestBuilder builder = c.prepareSearch(index);
+            callback.accept(builder);
+            builder.execute(listener);
+        }).thenApply(response -> createResultList(clazz, response));
+    }
+
+    protected <T> List<T> createResultList(final Class<T> clazz, final SearchResponse response) {
         final EsResultList<T> targetList = new EsResultList<>();
         final SearchHits hits = response.getHits();
         targetList.setTotalHits(hits.getTotalHits().value);
@@ -386,16 +630,7 @@ public abstract class AbstractCrawlerService {
         if (hits.getTotalHits().value != 0) {
             try {
                 for (final SearchHit searchHit : hits.getHits()) {
-                    final Map<String, Object> source = searchHit.getSourceAsMap();
-                    final T target = BeanUtil.copyMapToNewBean(source, clazz, option -> {
-                        option.converter(new EsTimestampConverter(), timestampFields).excludeWhitespace();
-                        option.exclude(EsAccessResult.ACCESS_RESULT_DATA);
-                    });
-                    @SuppressWarnings("unchecked")
-                    final Map<String, Object> data = (Map<String, Object>) source.get(EsAccessResult.ACCESS_RESULT_DATA);
-                    if (data != null) {
-                        ((EsAccessResult) target).setAccessResultData(new EsAccessResultData(data));
-                    }
+                    final T target = parseSource(clazz, searchHit.getSourceRef());
                     setId(target, searchHit.getId());
                     targetList.add(target);
                 }
@@ -407,25 +642,194 @@ public abstract class AbstractCrawlerService {
     }
 
     protected boolean delete(final String sessionId, final String url) {
+        flushBulkWriter();
         final String id = getId(sessionId, url);
         try {
             final DeleteResponse response =
-                    getClient().get(c -> c.prepareDelete().setIndex(index).setId(id).setRefreshPolicy(RefreshPolicy.IMMEDIATE).execute());
+                    getClient().get(c -> c.prepareDelete().setIndex(index).setId(id).setRefreshPolicy(refreshPolicy).execute());
+            addRecentlyDeletedId(id);
             return response.getResult() == Result.DELETED;
         } catch (final Exception e) {
             throw new EsAccessException("Failed to delete " + sessionId + ":" + url, e);
         }
     }
 
+    protected void addRecentlyWrittenId(final String id) {
+        if (!isRecentCacheEnabled()) {
+            // documents are already searchable
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        recentlyDeletedIdMap.remove(id);
+        recentlyWrittenIdMap.put(id, now);
+        pruneRecentCache(now);
+    }
+
+    protected void addRecentlyDeletedId(final String id) {
+        if (!isRecentCacheEnabled()) {
+            // documents are already searchable
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        recentlyWrittenIdMap.remove(id);
+        recentlyDeletedIdMap.put(id, now);
+        pruneRecentCache(now);
+    }
+
+    /**
+     * Checks if written documents may not be found by search and get requests.
+     *
+     * @return true if written ids need to be tracked
+     */
+    protected boolean isRecentCacheEnabled() {
+        return refreshPolicy == RefreshPolicy.NONE || bulkWriter != null;
+    }
+
+    protected boolean isBulkWriterEnabled() {
+        // write synchronously after the writer is closed, such as in PreDestroy
+        return bulkWriter != null && !bulkWriter.isClosed();
+    }
+
+    /**
+     * Sends documents buffered in the bulk writer and waits for them.
+     */
+    protected void flushBulkWriter() {
+        if (bulkWriter != null) {
+            bulkWriter.flush();
+        }
+    }
+
+    /**
+     * Checks if a document is deleted but it may be still found by search requests.
+     *
+     * @param id document id
+     * @return true if the document is deleted after the last refresh
+     */
+    protected boolean isRecentlyDeleted(final String id) {
+        return recentlyDeletedIdMap.containsKey(id);
+    }
+
+    protected boolean hasRecentlyWrittenIds() {
+        return !recentlyWrittenIdMap.isEmpty();
+    }
+
+    protected void pruneRecentCache(final long now) {
+        if (now - lastPrunedTime < recentCacheExpiry) {
+            return;
+        }
+        lastPrunedTime = now;
+        // documents are searchable after refresh_interval
+        final long expiredTime = now - recentCacheExpiry;
+        recentlyWrittenIdMap.values().removeIf(time -> time < expiredTime);
+        recentlyDeletedIdMap.values().removeIf(time -> time < expiredTime);
+    }
+
     protected void deleteBySessionId(final String sessionId) {
-        delete(builder -> builder.setQuery(QueryBuilders.termQuery(SESSION_ID, sessionId)));
+        deleteByQuery(QueryBuilders.termQuery(SESSION_ID, sessionId));
     }
 
     public void deleteAll() {
-        delete(builder -> builder.setQuery(QueryBuilders.matchAllQuery()));
+        deleteByQuery(QueryBuilders.matchAllQuery());
+    }
+
+    /**
+     * Deletes documents matched by a given query.
+     * If deleteByQueryEnabled is true, documents are deleted by Delete By Query API in the cluster.
+     * Otherwise, they are deleted by bulk requests page by page.
+     *
+     * @param queryBuilder query
+     */
+    protected void deleteByQuery(final QueryBuilder queryBuilder) {
+        if (!deleteByQueryEnabled) {
+            delete(builder -> builder.setQuery(queryBuilder));
+            return;
+        }
+
+        flushBulkWriter();
+        final BulkByScrollResponse response = getClient().get(c -> {
+            final DeleteByQueryRequest request = new DeleteByQueryRequest(index);
+            request.setQuery(queryBuilder);
+            // documents updated during the deletion are skipped
+            request.setConflicts("proceed");
+            request.setSlices(AbstractBulkByScrollRequest.AUTO_SLICES);
+            return c.execute(DeleteByQueryAction.INSTANCE, request);
+        });
+        if (!response.getBulkFailures().isEmpty() || !response.getSearchFailures().isEmpty()) {
+            throw new EsAccessException("Failed to delete documents by " + queryBuilder + ": bulk failures=" + response.getBulkFailures()
+                    + ", search failures=" + response.getSearchFailures());
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Deleted {} documents in {}: {}", response.getDeleted(), index, response.getTook());
+        }
+
+        refresh();
     }
 
     public void delete(final Consumer<SearchRequestBuilder> callback) {
+        flushBulkWriter();
+        scanAll(callback, searchHits -> {
+            final BulkResponse bulkResponse = getClient().get(c -> {
+                final BulkRequestBuilder bulkBuilder = c.prepareBulk();
+                for (final SearchHit searchHit : searchHits) {
+                    bulkBuilder.add(c.prepareDelete().setIndex(index).setId(searchHit.getId()));
+                }
+
+                return bulkBuilder.execute();
+            });
+            if (bulkResponse.hasFailures()) {
+                throw new EsAccessException(bulkResponse.buildFailureMessage());
+            }
+        });
+
+        refresh();
+    }
+
+    /**
+     * Visits all documents matched by a given search request page by page.
+     * If searchAfterEnabled is true, pages are sorted by sessionId and url, which identify a document,
+     * and the next page is requested by search_after while the current page is processed.
+     * Otherwise, a scroll context is used.
+     *
+     * @param callback a callback to build a search request
+     * @param consumer a consumer of each page
+     */
+    protected void scanAll(final Consumer<SearchRequestBuilder> callback, final Consumer<SearchHits> consumer) {
+        if (!searchAfterEnabled) {
+            scroll(callback, consumer);
+            return;
+        }
+
+        CompletableFuture<SearchResponse> future = searchAfter(callback, null);
+        while (future != null) {
+            final SearchHits searchHits = join(future).getHits();
+            final SearchHit[] hits = searchHits.getHits();
+            if (hits.length == 0) {
+                break;
+            }
+            if (hits.length >= searchAfterSize) {
+                // fetch the next page in parallel
+                future = searchAfter(callback, hits[hits.length - 1].getSortValues());
+            } else {
+                future = null;
+            }
+            consumer.accept(searchHits);
+        }
+    }
+
+    protected CompletableFuture<SearchResponse> searchAfter(final Consumer<SearchRequestBuilder> callback, final Object[] sortValues) {
+        return getClient().<SearchResponse> getAsync((c, listener) -> {
+            final SearchRequestBuilder builder = c.prepareSearch(index).setSize(searchAfterSize).setTrackTotalHits(false);
+            callback.accept(builder);
+            builder.addSort(SortBuilders.fieldSort(SESSION_ID).order(SortOrder.ASC));
+            builder.addSort(SortBuilders.fieldSort(URL).order(SortOrder.ASC));
+            if (sortValues != null) {
+                builder.searchAfter(sortValues);
+            }
+            builder.execute(listener);
+        });
+    }
+
+    protected void scroll(final Consumer<SearchRequestBuilder> callback, final Consumer<SearchHits> consumer) {
         SearchResponse response = getClient().get(c -> {
             final SearchRequestBuilder builder = c.prepareSearch(index).setScroll(new TimeValue(scrollTimeout)).setSize(scrollSize);
             callback.accept(builder);
@@ -439,17 +843,7 @@ public abstract class AbstractCrawlerService {
                     break;
                 }
 
-                final BulkResponse bulkResponse = getClient().get(c -> {
-                    final BulkRequestBuilder bulkBuilder = c.prepareBulk();
-                    for (final SearchHit searchHit : searchHits) {
-                        bulkBuilder.add(c.prepareDelete().setIndex(index).setId(searchHit.getId()));
-                    }
-
-                    return bulkBuilder.execute();
-                });
-                if (bulkResponse.hasFailures()) {
-                    throw new EsAccessException(bulkResponse.buildFailureMessage());
-                }
+                consumer.accept(searchHits);
 
                 final String sid = scrollId;
                 response = getClient().get(c -> c.prepareSearchScroll(sid).setScroll(new TimeValue(scrollTimeout)).execute());
@@ -461,8 +855,6 @@ public abstract class AbstractCrawlerService {
         } finally {
             getClient().clearScroll(scrollId);
         }
-
-        refresh();
     }
 
     private String getId(final String sessionId, final String url) {
@@ -517,6 +909,40 @@ public abstract class AbstractCrawlerService {
         this.scrollSize = scrollSize;
     }
 
+    public boolean isSearchAfterEnabled() {
+        return searchAfterEnabled;
+    }
+
+    /**
+     * Sets if search_after is used to visit all documents instead of a scroll context.
+     *
+     * @param searchAfterEnabled true to use search_after
+     */
+    public void setSearchAfterEnabled(final boolean searchAfterEnabled) {
+        this.searchAfterEnabled = searchAfterEnabled;
+    }
+
+    public boolean isDeleteByQueryEnabled() {
+        return deleteByQueryEnabled;
+    }
+
+    /**
+     * Sets if documents of a session are deleted by Delete By Query API in the cluster.
+     *
+     * @param deleteByQueryEnabled true to use delete-by-query
+     */
+    public void setDeleteByQueryEnabled(final boolean deleteByQueryEnabled) {
+        this.deleteByQueryEnabled = deleteByQueryEnabled;
+    }
+
+    public int getSearchAfterSize() {
+        return searchAfterSize;
+    }
+
+    public void setSearchAfterSize(final int searchAfterSize) {
+        this.searchAfterSize = searchAfterSize;
+    }
+
     protected static class EsTimestampConverter implements Converter {
         public static final DateTimeFormatter DEFAULT_DATE_PRINTER = ISODateTimeFormat.dateTime().withZone(DateTimeZone.UTC);
 
@@ -563,4 +989,45 @@ public abstract class AbstractCrawlerService {
         this.idPrefixLength = idPrefixLength;
     }
 
+    public RefreshPolicy getRefreshPolicy() {
+        return refreshPolicy;
+    }
+
+    /**
+     * Sets a refresh policy for write requests.
+     * If it's NONE, written documents are tracked until the next refresh
+     * so that exists checks can see them.
+     *
+     * @param refreshPolicy refresh policy
+     */
+    public void setRefreshPolicy(final RefreshPolicy refreshPolicy) {
+        this.refreshPolicy = refreshPolicy;
+    }
+
+    public void setRecentCacheExpiry(final long recentCacheExpiry) {
+        this.recentCacheExpiry = recentCacheExpiry;
+    }
+
+    public EsBulkWriter getBulkWriter() {
+        return bulkWriter;
+    }
+
+    /**
+     * Sets a writer to store documents asynchronously.
+     * Written documents are tracked until the next refresh as with RefreshPolicy.NONE,
+     * and they are removed from the tracked ids if the writer fails to store them.
+     *
+     * @param bulkWriter bulk writer, or null to write synchronously
+     */
+    public void setBulkWriter(final EsBulkWriter bulkWriter) {
+        this.bulkWriter = bulkWriter;
+        if (bulkWriter != null) {
+            bulkWriter.addFailureListener((request, failure) -> {
+                if (index.equals(request.index()) && failure.getStatus() != RestStatus.CONFLICT) {
+                    recentlyWrittenIdMap.remove(request.id());
+                }
+            });
+        }
+    }
+
 }
@@ -15,13 +15,15 @@
  */
 package org.codelibs.fess.crawler.service.impl;
 
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Consumer;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
-import org.codelibs.core.beans.util.BeanUtil;
+import org.codelibs.core.lang.StringUtil;
 import org.codelibs.fess.crawler.entity.EsAccessResult;
 import org.codelibs.fess.crawler.entity.EsAccessResultData;
 import org.codelibs.fess.crawler.exception.EsAccessException;
@@ -29,20 +31,34 @@ import org.codelibs.fess.crawler.service.DataService;
 import org.codelibs.fess.crawler.util.AccessResultCallback;
 import org.codelibs.fess.crawler.util.EsCrawlerConfig;
 import org.codelibs.fess.crawler.util.EsResultList;
+import org.codelibs.fess.crawler.util.EsXContentUtil;
 import org.elasticsearch.action.DocWriteRequest.OpType;
+import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 
 public class EsDataService extends AbstractCrawlerService implements DataService<EsAccessResult> {
 
+    private static final String[] DATA_EXCLUDES = { EsAccessResult.ACCESS_RESULT_DATA + "." + EsAccessResultData.DATA };
+
+    private static final String[] DATA_INCLUDES = { EsAccessResult.ACCESS_RESULT_DATA + "." + EsAccessResultData.DATA,
+            EsAccessResult.ACCESS_RESULT_DATA + "." + EsAccessResultData.COMPRESSION };
+
+    protected boolean lazyDataLoadingEnabled = true;
+
+    protected ToXContent.Params xContentParams = ToXContent.EMPTY_PARAMS;
+
     public EsDataService(final EsCrawlerConfig crawlerConfig) {
         this.index = crawlerConfig.getDataIndex();
         setNumberOfShards(crawlerConfig.getDataShards());
         setNumberOfReplicas(crawlerConfig.getDataReplicas());
+        setDeleteByQueryEnabled(crawlerConfig.isDeleteByQueryEnabled());
+        setDataCompression(crawlerConfig.getDataCompression());
     }
 
     public EsDataService(final String name, final String type) {
@@ -54,6 +70,58 @@ public class EsDataService extends AbstractCrawlerService implements DataService
         esClient.addOnConnectListener(() -> createMapping("data"));
     }
 
+    @PreDestroy
+    public void destroy() {
+        flushBulkWriter();
+    }
+
+    /**
+     * Returns fields which are not fetched by default.
+     *
+     * @return patterns of the data field, or null if all fields are fetched
+     */
+    protected String[] getDataExcludes() {
+        return lazyDataLoadingEnabled ? DATA_EXCLUDES : null;
+    }
+
+    @Override
+    protected Object parseEntity(final Class<?> clazz, final XContentParser parser) throws IOException {
+        final Object target = super.parseEntity(clazz, parser);
+        if (lazyDataLoadingEnabled && target instanceof EsAccessResult) {
+            final EsAccessResult accessResult = (EsAccessResult) target;
+            // the id is set after this method
+            accessResult.setDataLoader(() -> loadData(accessResult.getId()));
+        }
+        return target;
+    }
+
+    @Override
+    protected ToXContent.Params getXContentParams() {
+        return xContentParams;
+    }
+
+    protected byte[] loadData(final String id) {
+        if (id == null) {
+            return null;
+        }
+        final GetResponse response = getClient().get(c -> c.prepareGet().setIndex(index).setId(id).setFetchSource(DATA_INCLUDES, null).execute());
+        if (response.isExists()) {
+            try (XContentParser parser = EsXContentUtil.createParser(response.getSourceAsBytesRef())) {
+                EsXContentUtil.startObject(parser);
+                while (parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                    final String fieldName = parser.currentName();
+                    if (parser.nextToken() == XContentParser.Token.START_OBJECT && EsAccessResult.ACCESS_RESULT_DATA.equals(fieldName)) {
+                        return EsAccessResultData.fromXContent(parser).getData();
+                    }
+                    parser.skipChildren();
+                }
+            } catch (final IOException e) {
+                throw new EsAccessException("Failed to load data: " + id, e);
+            }
+        }
+        return null;
+    }
+
     @Override
     public void store(final EsAccessResult accessResult) {
         super.insert(accessResult, accessResult.getId() == null ? OpType.CREATE : OpType.INDEX);
@@ -81,12 +149,17 @@ public class EsDataService extends AbstractCrawlerService implements DataService
 
     @Override
     public EsAccessResult getAccessResult(final String sessionId, final String url) {
-        return get(EsAccessResult.class, sessionId, url);
+        return get(EsAccessResult.class, sessionId, url, getDataExcludes());
     }
 
     @Override
     public List<EsAccessResult> getAccessResultList(final String url, final boolean hasData) {
-        return getList(EsAccessResult.class, builder -> builder.setQuery(QueryBuilders.termQuery(URL, url)));
+        return getList(EsAccessResult.class, builder -> {
+            builder.setQuery(QueryBuilders.termQuery(URL, url));
+            if (!hasData && lazyDataLoadingEnabled) {
+                builder.setFetchSource(null, DATA_EXCLUDES);
+            }
+        });
     }
 
     public List<EsAccessResult> getAccessResultList(final Consumer<SearchRequestBuilder> callback) {
@@ -94,7 +167,7 @@ public class EsDataService extends AbstractCrawlerService implements DataService
             final SearchRequestBuilder builder = c.prepareSearch(index);
             callback.accept(builder);
             builder.setFetchSource(new String[] { "parentUrl", "method", "mimeType", "sessionId", "url", "executionTime", "createTime",
-                    "contentLength", "lastModified", "ruleId", "httpStatusCode", "status" }, null);
+                    "contentLength", "lastModified", "etag", "ruleId", "httpStatusCode", "status" }, null);
             return builder.execute();
         });
         final EsResultList<EsAccessResult> targetList = new EsResultList<>();
@@ -104,21 +177,7 @@ public class EsDataService extends AbstractCrawlerService implements DataService
         if (hits.getTotalHits().value != 0) {
             try {
                 for (final SearchHit searchHit : hits.getHits()) {
-                    final EsAccessResult target = new EsAccessResult();
-                    final Map<String, Object> fields = searchHit.getSourceAsMap();
-                    target.setParentUrl(getFieldValue(fields.get("parentUrl"), String.class));
-                    target.setMethod(getFieldValue(fields.get("method"), String.class));
-                    target.setMimeType(getFieldValue(fields.get("mimeType"), String.class));
-                    target.setSessionId(getFieldValue(fields.get("sessionId"), String.class));
-                    target.setUrl(getFieldValue(fields.get("url"), String.class));
-                    target.setExecutionTime(getFieldValue(fields.get("executionTime"), Integer.class));
-                    target.setContentLength(getFieldValue(fields.get("contentLength"), Long.class));
-                    target.setRuleId(getFieldValue(fields.get("ruleId"), String.class));
-                    target.setHttpStatusCode(getFieldValue(fields.get("httpStatusCode"), Integer.class));
-                    target.setStatus(getFieldValue(fields.get("status"), Integer.class));
-                    target.setCreateTime(getFieldValue(fields.get("createTime"), Long.class));
-                    target.setLastModified(getFieldValue(fields.get("lastModified"), Long.class));
-
+                    final EsAccessResult target = parseSource(EsAccessResult.class, searchHit.getSourceRef());
                     setId(target, searchHit.getId());
                     targetList.add(target);
                 }
@@ -129,55 +188,46 @@ public class EsDataService extends AbstractCrawlerService implements DataService
         return targetList;
     }
 
-    @SuppressWarnings("unchecked")
-    private <T> T getFieldValue(final Object field, final Class<T> clazz) {
-        if (field == null) {
-            return null;
-        } else if (clazz.equals(Integer.class)) {
-            final Number value = (Number) field;
-            return (T) Integer.valueOf(value.intValue());
-        } else if (clazz.equals(Long.class)) {
-            final Number value = (Number) field;
-            return (T) Long.valueOf(value.longValue());
-        }
-        return (T) field;
-    }
-
     @Override
     public void iterate(final String sessionId, final AccessResultCallback<EsAccessResult> callback) {
-        SearchResponse response = getClient().get(c -> c.prepareSearch(index).setScroll(new TimeValue(scrollTimeout))
-                .setQuery(QueryBuilders.boolQuery().filter(QueryBuilders.termQuery(SESSION_ID, sessionId))).setSize(scrollSize).execute());
-        String scrollId = response.getScrollId();
-        try {
-            while (scrollId != null) {
-                final SearchHits searchHits = response.getHits();
-                if (searchHits.getHits().length == 0) {
-                    break;
-                }
+        scanAll(builder -> {
+            builder.setQuery(QueryBuilders.boolQuery().filter(QueryBuilders.termQuery(SESSION_ID, sessionId)));
+            if (lazyDataLoadingEnabled) {
+                builder.setFetchSource(null, DATA_EXCLUDES);
+            }
+        }, searchHits -> {
+            for (final SearchHit searchHit : searchHits) {
+                final EsAccessResult accessResult = parseSource(EsAccessResult.class, searchHit.getSourceRef());
+                setId(accessResult, searchHit.getId());
+                callback.iterate(accessResult);
+            }
+        });
+    }
 
-                for (final SearchHit searchHit : searchHits) {
-                    final Map<String, Object> source = searchHit.getSourceAsMap();
-                    final EsAccessResult accessResult = BeanUtil.copyMapToNewBean(source, EsAccessResult.class, option -> {
-                        option.converter(new EsTimestampConverter(), timestampFields).excludeWhitespace();
-                        option.exclude(EsAccessResult.ACCESS_RESULT_DATA);
-                    });
-                    @SuppressWarnings("unchecked")
-                    final Map<String, Object> data = (Map<String, Object>) source.get(EsAccessResult.ACCESS_RESULT_DATA);
-                    if (data != null) {
-                        accessResult.setAccessResultData(new EsAccessResultData(data));
-                    }
-                    callback.iterate(accessResult);
-                }
+    /**
+     * Sets if accessResultData.data is loaded when it's used.
+     * If it's true, getAccessResult and iterate do not fetch the data field.
+     *
+     * @param lazyDataLoadingEnabled true to load the data field lazily
+     */
+    public void setLazyDataLoadingEnabled(final boolean lazyDataLoadingEnabled) {
+        this.lazyDataLoadingEnabled = lazyDataLoadingEnabled;
+    }
 
-                final String sid = scrollId;
-                response = getClient().get(c -> c.prepareSearchScroll(sid).setScroll(new TimeValue(scrollTimeout)).execute());
-                if (!scrollId.equals(response.getScrollId())) {
-                    getClient().clearScroll(scrollId);
-                }
-                scrollId = response.getScrollId();
-            }
-        } finally {
-            getClient().clearScroll(scrollId);
+    /**
+     * Sets a compression of accessResultData.data stored in the index.
+     * The compression is recorded in accessResultData.compression, so documents
+     * stored with a different setting can be read.
+     *
+     * @param dataCompression "deflate", or null not to compress data
+     */
+    public void setDataCompression(final String dataCompression) {
+        if (StringUtil.isBlank(dataCompression)) {
+            xContentParams = ToXContent.EMPTY_PARAMS;
+        } else if (EsAccessResultData.DEFLATE.equals(dataCompression)) {
+            xContentParams = new ToXContent.MapParams(Collections.singletonMap(EsAccessResultData.COMPRESSION, dataCompression));
+        } else {
+            throw new IllegalArgumentException("Unsupported compression: " + dataCompression);
         }
     }
 }
@@ -57,6 +57,7 @@ public class EsUrlFilterService extends AbstractCrawlerService implements UrlFil
         this.index = crawlerConfig.getFilterIndex();
         setNumberOfShards(crawlerConfig.getFilterShards());
         setNumberOfReplicas(crawlerConfig.getFilterReplicas());
+        setDeleteByQueryEnabled(crawlerConfig.isDeleteByQueryEnabled());
     }
 
     public EsUrlFilterService(final String name, final String type) {
@@ -130,6 +131,7 @@ public class EsUrlFilterService extends AbstractCrawlerService implements UrlFil
             esUrlFilter.setFilterType(EXCLUDE);
             esUrlFilter.setUrl(url);
             urlFilterList.add(esUrlFilter);
+            invalidateSet.add(sessionId);
         }
         insertAll(urlFilterList, OpType.INDEX);
         invalidateSet.forEach(s -> excludeFilterCache.invalidate(s));
@@ -160,6 +162,16 @@ public class EsUrlFilterService extends AbstractCrawlerService implements UrlFil
         }
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.service.UrlFilterService#isPersistent()
+     */
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
     public void setFilterCacheExpireAfterWrite(final int filterCacheExpireAfterWrite) {
         this.filterCacheExpireAfterWrite = filterCacheExpireAfterWrite;
     }
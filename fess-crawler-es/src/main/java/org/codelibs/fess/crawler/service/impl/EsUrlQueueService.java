@@ -16,11 +16,19 @@
 package org.codelibs.fess.crawler.service.impl;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
@@ -29,7 +37,6 @@ import javax.annotation.Resource;
 
 import org.codelibs.core.lang.StringUtil;
 import org.codelibs.fess.crawler.Constants;
-import org.codelibs.fess.crawler.entity.AccessResult;
 import org.codelibs.fess.crawler.entity.EsUrlQueue;
 import org.codelibs.fess.crawler.entity.UrlQueue;
 import org.codelibs.fess.crawler.exception.EsAccessException;
@@ -38,13 +45,9 @@ import org.codelibs.fess.crawler.util.EsCrawlerConfig;
 import org.elasticsearch.action.DocWriteRequest.OpType;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
-import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
 import org.elasticsearch.action.update.UpdateRequestBuilder;
-import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
-import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.search.sort.SortOrder;
 import org.slf4j.Logger;
@@ -62,10 +65,18 @@ public class EsUrlQueueService extends AbstractCrawlerService implements UrlQueu
 
     protected int maxCrawlingQueueSize = 100;
 
+    protected int maxPreferredScanSize = 100;
+
+    // prefetch the next page if the number of waiting urls is less than this value
+    protected int prefetchThreshold = 0;
+
+    protected volatile ExecutorService prefetchExecutor;
+
     public EsUrlQueueService(final EsCrawlerConfig crawlerConfig) {
         this.index = crawlerConfig.getQueueIndex();
         setNumberOfShards(crawlerConfig.getQueueShards());
         setNumberOfReplicas(crawlerConfig.getQueueReplicas());
+        setDeleteByQueryEnabled(crawlerConfig.isDeleteByQueryEnabled());
     }
 
     public EsUrlQueueService(final String name, final String type) {
@@ -86,6 +97,13 @@ public class EsUrlQueueService extends AbstractCrawlerService implements UrlQueu
                 logger.warn("Failed to restore " + urlQueue, e);
             }
         }));
+        flushBulkWriter();
+        synchronized (this) {
+            if (prefetchExecutor != null) {
+                prefetchExecutor.shutdownNow();
+                prefetchExecutor = null;
+            }
+        }
     }
 
     public void clearCache() {
@@ -94,41 +112,22 @@ public class EsUrlQueueService extends AbstractCrawlerService implements UrlQueu
 
     @Override
     public void updateSessionId(final String oldSessionId, final String newSessionId) {
-        SearchResponse response = getClient().get(c -> c.prepareSearch(index).setScroll(new TimeValue(scrollTimeout))
-                .setQuery(QueryBuilders.boolQuery().filter(QueryBuilders.termQuery(SESSION_ID, oldSessionId))).setSize(scrollSize)
-                .execute());
-        String scrollId = response.getScrollId();
-        try {
-            while (scrollId != null) {
-                final SearchHits searchHits = response.getHits();
-                if (searchHits.getHits().length == 0) {
-                    break;
-                }
+        scanAll(builder -> builder.setQuery(QueryBuilders.boolQuery().filter(QueryBuilders.termQuery(SESSION_ID, oldSessionId))),
+                searchHits -> {
+                    final BulkResponse bulkResponse = getClient().get(c -> {
+                        final BulkRequestBuilder builder = c.prepareBulk();
+                        for (final SearchHit searchHit : searchHits) {
+                            final UpdateRequestBuilder updateRequest =
+                                    c.prepareUpdate().setIndex(index).setId(searchHit.getId()).setDoc(SESSION_ID, newSessionId);
+                            builder.add(updateRequest);
+                        }
 
-                final BulkResponse bulkResponse = getClient().get(c -> {
-                    final BulkRequestBuilder builder = c.prepareBulk();
-                    for (final SearchHit searchHit : searchHits) {
-                        final UpdateRequestBuilder updateRequest =
-                                c.prepareUpdate().setIndex(index).setId(searchHit.getId()).setDoc(SESSION_ID, newSessionId);
-                        builder.add(updateRequest);
+                        return builder.execute();
+                    });
+                    if (bulkResponse.hasFailures()) {
+                        throw new EsAccessException(bulkResponse.buildFailureMessage());
                     }
-
-                    return builder.execute();
                 });
-                if (bulkResponse.hasFailures()) {
-                    throw new EsAccessException(bulkResponse.buildFailureMessage());
-                }
-
-                final String sid = scrollId;
-                response = getClient().get(c -> c.prepareSearchScroll(sid).setScroll(new TimeValue(scrollTimeout)).execute());
-                if (!scrollId.equals(response.getScrollId())) {
-                    getClient().clearScroll(scrollId);
-                }
-                scrollId = response.getScrollId();
-            }
-        } finally {
-            getClient().clearScroll(scrollId);
-        }
     }
 
     @Override
@@ -169,19 +168,44 @@ public class EsUrlQueueService extends AbstractCrawlerService implements UrlQueu
         if (logger.isDebugEnabled()) {
             logger.debug("Offering URL: Session ID: {}, UrlQueue: {}", sessionId, urlQueueList);
         }
-        final List<UrlQueue<String>> targetList = new ArrayList<>(urlQueueList.size());
-        for (final UrlQueue<String> urlQueue : urlQueueList) {
-            if (!exists(sessionId, urlQueue.getUrl()) && !dataService.exists(sessionId, urlQueue.getUrl())) {
-                urlQueue.setSessionId(sessionId);
-                targetList.add(urlQueue);
-            } else if (logger.isDebugEnabled()) {
-                logger.debug("Existed URL: Session ID: {}, UrlQueue: {}", sessionId, urlQueue);
+        final QueueHolder queueHolder = getQueueHolder(sessionId);
+        final Map<String, EsUrlQueue> candidateMap = new LinkedHashMap<>();
+        for (final EsUrlQueue urlQueue : urlQueueList) {
+            final String url = urlQueue.getUrl();
+            if (StringUtil.isBlank(url) || queueHolder.contains(url) || candidateMap.containsKey(url)) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Existed URL: Session ID: {}, UrlQueue: {}", sessionId, urlQueue);
+                }
+                continue;
             }
+            candidateMap.put(url, urlQueue);
+        }
+
+        if (!candidateMap.isEmpty()) {
+            // check urls in queue and data indices by multi-get requests in parallel
+            final List<String> candidateUrlList = new ArrayList<>(candidateMap.keySet());
+            final CompletableFuture<Set<String>> queueFuture = existsAllAsync(sessionId, candidateUrlList);
+            final CompletableFuture<Set<String>> dataFuture = dataService.existsAllAsync(sessionId, candidateUrlList);
+            try {
+                candidateMap.keySet().removeAll(join(queueFuture));
+                candidateMap.keySet().removeAll(join(dataFuture));
+            } catch (final EsAccessException e) {
+                throw e;
+            } catch (final Exception e) {
+                throw new EsAccessException("Failed to check if " + candidateUrlList.size() + " urls exist in " + sessionId, e);
+            }
+        }
+
+        final List<UrlQueue<String>> targetList = new ArrayList<>(candidateMap.size());
+        for (final UrlQueue<String> urlQueue : candidateMap.values()) {
+            urlQueue.setSessionId(sessionId);
+            targetList.add(urlQueue);
         }
         if (!targetList.isEmpty()) {
             insertAll(targetList.stream()
                     .filter(urlQueue -> StringUtil.isNotBlank(urlQueue.getSessionId()) && StringUtil.isNotBlank(urlQueue.getUrl()))
                     .collect(Collectors.toList()), OpType.CREATE, true);
+            queueHolder.prefetchable = true;
             if (logger.isDebugEnabled()) {
                 logger.debug("Offered URL: Session ID: {}, UrlQueue: {}", sessionId, targetList);
             }
@@ -192,48 +216,19 @@ public class EsUrlQueueService extends AbstractCrawlerService implements UrlQueu
     public EsUrlQueue poll(final String sessionId) {
         final QueueHolder queueHolder = getQueueHolder(sessionId);
         final Queue<EsUrlQueue> waitingQueue = queueHolder.waitingQueue;
-        final Queue<EsUrlQueue> crawlingQueue = queueHolder.crawlingQueue;
         EsUrlQueue urlQueue = waitingQueue.poll();
         if (urlQueue != null) {
-            if (crawlingQueue.size() > maxCrawlingQueueSize) {
-                crawlingQueue.poll();
-            }
-            crawlingQueue.add(urlQueue);
+            addCrawlingQueue(queueHolder, urlQueue);
+            prefetchUrlQueues(sessionId, queueHolder);
             return urlQueue;
         }
 
         synchronized (queueHolder) {
             urlQueue = waitingQueue.poll();
             if (urlQueue == null) {
-                final List<EsUrlQueue> urlQueueList = getList(EsUrlQueue.class, sessionId, null, 0, pollingFetchSize,
-                        SortBuilders.fieldSort(CREATE_TIME).order(SortOrder.ASC));
-                if (urlQueueList.isEmpty()) {
+                if (!fetchUrlQueues(sessionId, queueHolder)) {
                     return null;
                 }
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Queued URL: {}", urlQueueList);
-                }
-
-                if (!urlQueueList.isEmpty()) {
-                    try {
-                        // delete from es
-                        final BulkResponse response = getClient().get(c -> {
-                            final BulkRequestBuilder bulkBuilder = c.prepareBulk();
-                            for (final EsUrlQueue uq : urlQueueList) {
-                                bulkBuilder.add(c.prepareDelete().setIndex(index).setId(uq.getId()));
-                            }
-
-                            return bulkBuilder.setRefreshPolicy(RefreshPolicy.IMMEDIATE).execute();
-                        });
-                        if (response.hasFailures()) {
-                            logger.warn(response.buildFailureMessage());
-                        }
-                    } catch (final Exception e) {
-                        throw new EsAccessException("Failed to delete " + urlQueueList, e);
-                    }
-                }
-
-                waitingQueue.addAll(urlQueueList);
 
                 urlQueue = waitingQueue.poll();
                 if (urlQueue == null) {
@@ -243,16 +238,242 @@ public class EsUrlQueueService extends AbstractCrawlerService implements UrlQueu
 
         }
 
+        addCrawlingQueue(queueHolder, urlQueue);
+        prefetchUrlQueues(sessionId, queueHolder);
+        return urlQueue;
+    }
+
+    @Override
+    public List<EsUrlQueue> pollBatch(final String sessionId, final int size) {
+        final QueueHolder queueHolder = getQueueHolder(sessionId);
+        final List<EsUrlQueue> urlQueueList = new ArrayList<>(size);
+        drainWaitingQueue(queueHolder, urlQueueList, size);
+        if (urlQueueList.size() < size) {
+            synchronized (queueHolder) {
+                drainWaitingQueue(queueHolder, urlQueueList, size);
+                if (urlQueueList.size() < size && fetchUrlQueues(sessionId, queueHolder)) {
+                    drainWaitingQueue(queueHolder, urlQueueList, size);
+                }
+            }
+        }
+        if (!urlQueueList.isEmpty()) {
+            prefetchUrlQueues(sessionId, queueHolder);
+        }
+        return urlQueueList;
+    }
+
+    protected void drainWaitingQueue(final QueueHolder queueHolder, final List<EsUrlQueue> urlQueueList, final int size) {
+        EsUrlQueue urlQueue;
+        while (urlQueueList.size() < size && (urlQueue = queueHolder.waitingQueue.poll()) != null) {
+            // the url is kept in urlCountMap until it's released
+            queueHolder.polledUrlSet.add(urlQueue.getUrl());
+            urlQueueList.add(urlQueue);
+        }
+    }
+
+    @Override
+    public void release(final String sessionId, final EsUrlQueue urlQueue) {
+        final QueueHolder queueHolder = getQueueHolder(sessionId);
+        if (urlQueue.getUrl() != null && queueHolder.polledUrlSet.remove(urlQueue.getUrl())) {
+            // the url is checked in the crawling queue until the result is searchable
+            addCrawlingQueue(queueHolder, urlQueue);
+        }
+    }
+
+    protected void addCrawlingQueue(final QueueHolder queueHolder, final EsUrlQueue urlQueue) {
+        final Queue<EsUrlQueue> crawlingQueue = queueHolder.crawlingQueue;
         if (crawlingQueue.size() > maxCrawlingQueueSize) {
-            crawlingQueue.poll();
+            final EsUrlQueue crawledUrlQueue = crawlingQueue.poll();
+            if (crawledUrlQueue != null) {
+                queueHolder.removeUrl(crawledUrlQueue.getUrl());
+            }
         }
         crawlingQueue.add(urlQueue);
+    }
+
+    /**
+     * Moves queued urls from the index to the waiting queue of a given holder.
+     *
+     * @param sessionId session id
+     * @param queueHolder a holder of the session
+     * @return false if no url is found in the index
+     */
+    protected boolean fetchUrlQueues(final String sessionId, final QueueHolder queueHolder) {
+        final List<EsUrlQueue> urlQueueList;
+        final List<EsUrlQueue> searchedList = searchUrlQueues(sessionId);
+        if (isRecentCacheEnabled() && (searchedList.isEmpty() && hasRecentlyWrittenIds()
+                || searchedList.stream().anyMatch(uq -> isRecentlyDeleted(uq.getId())))) {
+            // the index is not refreshed after the last write
+            refresh();
+            urlQueueList = searchUrlQueues(sessionId);
+        } else {
+            urlQueueList = searchedList;
+        }
+        if (urlQueueList.isEmpty()) {
+            return false;
+        }
+        claimUrlQueues(queueHolder, urlQueueList);
+        queueHolder.prefetchable = true;
+        return true;
+    }
+
+    /**
+     * Deletes given urls from the index and adds them to the waiting queue.
+     * This method needs to be called in a lock of the holder.
+     *
+     * @param queueHolder a holder of the session
+     * @param urlQueueList urls to claim
+     */
+    protected void claimUrlQueues(final QueueHolder queueHolder, final List<EsUrlQueue> urlQueueList) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Queued URL: {}", urlQueueList);
+        }
+
+        try {
+            // delete from es
+            final BulkResponse response = getClient().get(c -> {
+                final BulkRequestBuilder bulkBuilder = c.prepareBulk();
+                for (final EsUrlQueue uq : urlQueueList) {
+                    bulkBuilder.add(c.prepareDelete().setIndex(index).setId(uq.getId()));
+                }
+
+                return bulkBuilder.setRefreshPolicy(refreshPolicy).execute();
+            });
+            if (response.hasFailures()) {
+                logger.warn(response.buildFailureMessage());
+            }
+            for (final EsUrlQueue uq : urlQueueList) {
+                addRecentlyDeletedId(uq.getId());
+            }
+        } catch (final Exception e) {
+            throw new EsAccessException("Failed to delete " + urlQueueList, e);
+        }
+
+        for (final EsUrlQueue urlQueue : urlQueueList) {
+            queueHolder.addUrl(urlQueue.getUrl());
+        }
+        queueHolder.waitingQueue.addAll(urlQueueList);
+        queueHolder.fetchCount++;
+    }
+
+    protected List<EsUrlQueue> searchUrlQueues(final String sessionId) {
+        return getList(EsUrlQueue.class, sessionId, null, 0, pollingFetchSize, SortBuilders.fieldSort(CREATE_TIME).order(SortOrder.ASC));
+    }
+
+    /**
+     * Fetches the next page of queued urls in background if the waiting queue
+     * becomes shorter than prefetchThreshold, so that poll does not wait for the search.
+     *
+     * @param sessionId session id
+     * @param queueHolder a holder of the session
+     */
+    protected void prefetchUrlQueues(final String sessionId, final QueueHolder queueHolder) {
+        if (prefetchThreshold <= 0 || !queueHolder.prefetchable || hasWaitingUrlQueues(queueHolder, prefetchThreshold)
+                || !queueHolder.prefetching.compareAndSet(false, true)) {
+            return;
+        }
+
+        final int fetchCount = queueHolder.fetchCount;
+        getListAsync(EsUrlQueue.class, builder -> {
+            builder.setQuery(QueryBuilders.boolQuery().filter(QueryBuilders.termQuery(SESSION_ID, sessionId)));
+            builder.addSort(SortBuilders.fieldSort(CREATE_TIME).order(SortOrder.ASC));
+            builder.setFrom(0).setSize(pollingFetchSize);
+        }).thenAcceptAsync(urlQueueList -> {
+            synchronized (queueHolder) {
+                if (fetchCount != queueHolder.fetchCount) {
+                    // the searched urls may be claimed by other threads
+                    return;
+                }
+                final List<EsUrlQueue> targetList = urlQueueList.stream()
+                        .filter(uq -> !isRecentlyDeleted(uq.getId()) && !queueHolder.contains(uq.getUrl())).collect(Collectors.toList());
+                if (targetList.isEmpty()) {
+                    // wait for new urls
+                    queueHolder.prefetchable = false;
+                    return;
+                }
+                claimUrlQueues(queueHolder, targetList);
+            }
+        }, getPrefetchExecutor()).whenComplete((v, t) -> {
+            queueHolder.prefetching.set(false);
+            if (t != null) {
+                logger.warn("Failed to prefetch urls in " + sessionId, t);
+            }
+        });
+    }
+
+    protected boolean hasWaitingUrlQueues(final QueueHolder queueHolder, final int size) {
+        final Iterator<EsUrlQueue> iterator = queueHolder.waitingQueue.iterator();
+        for (int i = 0; i < size; i++) {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            iterator.next();
+        }
+        return true;
+    }
+
+    protected ExecutorService getPrefetchExecutor() {
+        if (prefetchExecutor == null) {
+            synchronized (this) {
+                if (prefetchExecutor == null) {
+                    prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+                        final Thread thread = new Thread(r, "EsUrlQueuePrefetch");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return prefetchExecutor;
+    }
+
+    @Override
+    public EsUrlQueue poll(final String sessionId, final Predicate<EsUrlQueue> preferred) {
+        final QueueHolder queueHolder = getQueueHolder(sessionId);
+        EsUrlQueue urlQueue = pollPreferredUrlQueue(queueHolder, preferred);
+        if (urlQueue == null && !hasWaitingUrlQueues(queueHolder, maxPreferredScanSize)) {
+            // all waiting urls are scanned, so the next urls are fetched from the index
+            synchronized (queueHolder) {
+                urlQueue = pollPreferredUrlQueue(queueHolder, preferred);
+                if (urlQueue == null && !hasWaitingUrlQueues(queueHolder, maxPreferredScanSize)
+                        && fetchUrlQueues(sessionId, queueHolder)) {
+                    urlQueue = pollPreferredUrlQueue(queueHolder, preferred);
+                }
+            }
+        }
+
+        if (urlQueue != null) {
+            addCrawlingQueue(queueHolder, urlQueue);
+            prefetchUrlQueues(sessionId, queueHolder);
+        }
         return urlQueue;
     }
 
+    protected EsUrlQueue pollPreferredUrlQueue(final QueueHolder queueHolder, final Predicate<EsUrlQueue> preferred) {
+        final Queue<EsUrlQueue> waitingQueue = queueHolder.waitingQueue;
+        final Iterator<EsUrlQueue> iterator = waitingQueue.iterator();
+        for (int i = 0; i < maxPreferredScanSize && iterator.hasNext(); i++) {
+            final EsUrlQueue urlQueue = iterator.next();
+            // the url may be taken by other threads
+            if (preferred.test(urlQueue) && waitingQueue.remove(urlQueue)) {
+                return urlQueue;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean hasWaitingUrls(final String sessionId) {
+        if (!getQueueHolder(sessionId).waitingQueue.isEmpty()) {
+            return true;
+        }
+        return getCount(builder -> builder.setQuery(QueryBuilders.boolQuery().filter(QueryBuilders.termQuery(SESSION_ID, sessionId)))) > 0;
+    }
+
     @Override
     public void saveSession(final String sessionId) {
-        // TODO use cache
+        flushBulkWriter();
+        dataService.flushBulkWriter();
     }
 
     @Override
@@ -266,32 +487,26 @@ public class EsUrlQueueService extends AbstractCrawlerService implements UrlQueu
         }
 
         final String sessionId = urlQueue.getSessionId();
-        if (super.exists(sessionId, url)) {
+        if (getQueueHolder(sessionId).contains(url)) {
+            // waiting, polled or recently crawled url
             return true;
         }
 
-        final AccessResult<String> accessResult = dataService.getAccessResult(sessionId, url);
-        return accessResult != null;
+        // check queue and data indices concurrently
+        final CompletableFuture<Boolean> queueFuture = super.existsAsync(sessionId, url);
+        final CompletableFuture<Boolean> dataFuture = dataService.existsAsync(sessionId, url);
+        try {
+            return join(queueFuture) || join(dataFuture);
+        } catch (final Exception e) {
+            throw new EsAccessException("Failed to check if " + sessionId + ":" + url + " is visited.", e);
+        }
     }
 
     @Override
     protected boolean exists(final String sessionId, final String url) {
         final boolean ret = super.exists(sessionId, url);
         if (!ret) {
-            final QueueHolder queueHolder = getQueueHolder(sessionId);
-            final Queue<EsUrlQueue> waitingQueue = queueHolder.waitingQueue;
-            final Queue<EsUrlQueue> crawlingQueue = queueHolder.crawlingQueue;
-
-            for (final UrlQueue<String> urlQueue : crawlingQueue) {
-                if (sessionId.equals(urlQueue.getSessionId()) && url.equals(urlQueue.getUrl())) {
-                    return true;
-                }
-            }
-            for (final UrlQueue<String> urlQueue : waitingQueue) {
-                if (sessionId.equals(urlQueue.getSessionId()) && url.equals(urlQueue.getUrl())) {
-                    return true;
-                }
-            }
+            return getQueueHolder(sessionId).contains(url);
         }
         return ret;
     }
@@ -306,6 +521,8 @@ public class EsUrlQueueService extends AbstractCrawlerService implements UrlQueu
             urlQueue.setParentUrl(accessResult.getParentUrl());
             urlQueue.setDepth(0);
             urlQueue.setLastModified(accessResult.getLastModified());
+            urlQueue.setEtag(accessResult.getEtag());
+            urlQueue.setMimeType(accessResult.getMimeType());
             urlQueue.setCreateTime(System.currentTimeMillis());
             insert(urlQueue);
         });
@@ -325,6 +542,36 @@ public class EsUrlQueueService extends AbstractCrawlerService implements UrlQueu
         protected Queue<EsUrlQueue> waitingQueue = new ConcurrentLinkedQueue<>();
 
         protected Queue<EsUrlQueue> crawlingQueue = new ConcurrentLinkedQueue<>();
+
+        // urls polled by pollBatch, but not released yet
+        protected Set<String> polledUrlSet = ConcurrentHashMap.newKeySet();
+
+        // the number of urls in waiting, polled and crawling queues
+        protected Map<String, Integer> urlCountMap = new ConcurrentHashMap<>();
+
+        // incremented whenever urls are claimed from the index
+        protected volatile int fetchCount = 0;
+
+        // false if the last prefetch did not find any url
+        protected volatile boolean prefetchable = true;
+
+        protected final AtomicBoolean prefetching = new AtomicBoolean(false);
+
+        protected boolean contains(final String url) {
+            return url != null && urlCountMap.containsKey(url);
+        }
+
+        protected void addUrl(final String url) {
+            if (url != null) {
+                urlCountMap.merge(url, 1, Integer::sum);
+            }
+        }
+
+        protected void removeUrl(final String url) {
+            if (url != null) {
+                urlCountMap.computeIfPresent(url, (k, v) -> v > 1 ? v - 1 : null);
+            }
+        }
     }
 
     public void setPollingFetchSize(final int pollingFetchSize) {
@@ -334,4 +581,17 @@ public class EsUrlQueueService extends AbstractCrawlerService implements UrlQueu
     public void setMaxCrawlingQueueSize(final int maxCrawlingQueueSize) {
         this.maxCrawlingQueueSize = maxCrawlingQueueSize;
     }
+
+    public void setMaxPreferredScanSize(final int maxPreferredScanSize) {
+        this.maxPreferredScanSize = maxPreferredScanSize;
+    }
+
+    /**
+     * Sets a low watermark of the waiting queue to prefetch the next page.
+     *
+     * @param prefetchThreshold the number of waiting urls, or 0 to disable prefetching
+     */
+    public void setPrefetchThreshold(final int prefetchThreshold) {
+        this.prefetchThreshold = prefetchThreshold;
+    }
 }
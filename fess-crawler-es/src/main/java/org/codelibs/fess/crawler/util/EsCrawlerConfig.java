@@ -34,6 +34,10 @@ public class EsCrawlerConfig {
 
     protected int filterReplicas = 1;
 
+    protected boolean deleteByQueryEnabled = false;
+
+    protected String dataCompression;
+
     public String getQueueIndex() {
         return queueIndex;
     }
@@ -106,4 +110,20 @@ public class EsCrawlerConfig {
         this.filterReplicas = filterReplicas;
     }
 
+    public boolean isDeleteByQueryEnabled() {
+        return deleteByQueryEnabled;
+    }
+
+    public void setDeleteByQueryEnabled(final boolean deleteByQueryEnabled) {
+        this.deleteByQueryEnabled = deleteByQueryEnabled;
+    }
+
+    public String getDataCompression() {
+        return dataCompression;
+    }
+
+    public void setDataCompression(final String dataCompression) {
+        this.dataCompression = dataCompression;
+    }
+
 }
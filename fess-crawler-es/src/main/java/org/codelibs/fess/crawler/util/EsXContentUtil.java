@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.util;
+
+import static org.elasticsearch.common.xcontent.XContentParserUtils.ensureExpectedToken;
+
+import java.io.IOException;
+
+import org.codelibs.core.lang.StringUtil;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+/**
+ * Helper methods to read entities from _source without building intermediate maps.
+ *
+ * @author shinsuke
+ *
+ */
+public final class EsXContentUtil {
+
+    private EsXContentUtil() {
+        // nothing
+    }
+
+    public static XContentParser createParser(final BytesReference source) throws IOException {
+        return XContentHelper.createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, source,
+                XContentType.JSON);
+    }
+
+    /**
+     * Moves a parser to the start of an object if it's not started yet.
+     *
+     * @param parser a parser
+     * @throws IOException if the current token is not START_OBJECT
+     */
+    public static void startObject(final XContentParser parser) throws IOException {
+        XContentParser.Token token = parser.currentToken();
+        if (token == null) {
+            token = parser.nextToken();
+        }
+        ensureExpectedToken(XContentParser.Token.START_OBJECT, token, parser::getTokenLocation);
+    }
+
+    /**
+     * Returns a text value. A blank value is treated as null.
+     *
+     * @param parser a parser on a value token
+     * @return a text, or null
+     * @throws IOException if the value is not readable
+     */
+    public static String textOrNull(final XContentParser parser) throws IOException {
+        final String value = parser.text();
+        return StringUtil.isBlank(value) ? null : value;
+    }
+}
@@ -17,18 +17,26 @@ package org.codelibs.fess.crawler.service.impl;
 
 import static org.codelibs.elasticsearch.runner.ElasticsearchClusterRunner.newConfigs;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Resource;
 
 import org.codelibs.elasticsearch.runner.ElasticsearchClusterRunner;
+import org.codelibs.fess.crawler.client.EsBulkWriter;
 import org.codelibs.fess.crawler.client.EsClient;
 import org.codelibs.fess.crawler.entity.AccessResult;
 import org.codelibs.fess.crawler.entity.EsAccessResult;
+import org.codelibs.fess.crawler.entity.EsAccessResultData;
 import org.codelibs.fess.crawler.service.impl.EsDataService;
 import org.dbflute.utflute.lastadi.LastaDiTestCase;
+import org.elasticsearch.action.get.GetResponse;
 
 /**
  * @author shinsuke
@@ -180,4 +188,220 @@ public class EsDataServiceTest extends LastaDiTestCase {
         assertNull(dataService.getAccessResult("id2", "http://www.id2.com/"));
     }
 
+    public void test_store_bulkWriter() {
+        final EsBulkWriter bulkWriter = new EsBulkWriter(esClient);
+        bulkWriter.setBulkActions(100);
+        bulkWriter.setFlushInterval(60 * 1000L);
+        dataService.setBulkWriter(bulkWriter);
+
+        try {
+            for (int i = 0; i < 10; i++) {
+                final EsAccessResult accessResult = new EsAccessResult();
+                accessResult.setContentLength(Long.valueOf(10));
+                accessResult.setCreateTime(System.currentTimeMillis());
+                accessResult.setExecutionTime(10);
+                accessResult.setHttpStatusCode(200);
+                accessResult.setLastModified(System.currentTimeMillis());
+                accessResult.setMethod("GET");
+                accessResult.setMimeType("text/plain");
+                accessResult.setParentUrl("http://www.parent.com/");
+                accessResult.setRuleId("htmlRule");
+                accessResult.setSessionId("id1");
+                accessResult.setStatus(200);
+                accessResult.setUrl("http://www.id1.com/" + i);
+                dataService.store(accessResult);
+                assertNotNull(accessResult.getId());
+            }
+
+            // buffered documents are visible to exists checks
+            assertTrue(dataService.exists("id1", "http://www.id1.com/0"));
+            assertTrue(dataService.exists("id1", "http://www.id1.com/9"));
+            assertFalse(dataService.exists("id1", "http://www.id1.com/10"));
+
+            assertTrue(bulkWriter.flush());
+            dataService.refresh();
+            assertEquals(10, dataService.getCount("id1"));
+
+            final EsAccessResult accessResult = dataService.getAccessResult("id1", "http://www.id1.com/5");
+            assertNotNull(accessResult);
+            assertEquals("text/plain", accessResult.getMimeType());
+
+            dataService.delete("id1");
+            assertEquals(0, dataService.getCount("id1"));
+        } finally {
+            bulkWriter.close();
+            dataService.setBulkWriter(null);
+        }
+    }
+
+    public void test_existsAsync() {
+        final EsAccessResult accessResult1 = new EsAccessResult();
+        accessResult1.setContentLength(Long.valueOf(10));
+        accessResult1.setCreateTime(System.currentTimeMillis());
+        accessResult1.setExecutionTime(10);
+        accessResult1.setHttpStatusCode(200);
+        accessResult1.setLastModified(System.currentTimeMillis());
+        accessResult1.setMethod("GET");
+        accessResult1.setMimeType("text/plain");
+        accessResult1.setParentUrl("http://www.parent.com/");
+        accessResult1.setRuleId("htmlRule");
+        accessResult1.setSessionId("id1");
+        accessResult1.setStatus(200);
+        accessResult1.setUrl("http://www.id1.com/");
+        dataService.store(accessResult1);
+
+        assertTrue(dataService.existsAsync("id1", "http://www.id1.com/").join());
+        assertFalse(dataService.existsAsync("id1", "http://www.id2.com/").join());
+        assertFalse(dataService.existsAsync("id2", "http://www.id1.com/").join());
+
+        final Set<String> urlSet = dataService.existsAllAsync("id1", Arrays.asList("http://www.id1.com/", "http://www.id2.com/")).join();
+        assertEquals(1, urlSet.size());
+        assertTrue(urlSet.contains("http://www.id1.com/"));
+    }
+
+    public void test_iterate() {
+        for (int i = 0; i < 25; i++) {
+            final EsAccessResult accessResult = new EsAccessResult();
+            accessResult.setContentLength(Long.valueOf(10));
+            accessResult.setCreateTime(System.currentTimeMillis());
+            accessResult.setExecutionTime(10);
+            accessResult.setHttpStatusCode(200);
+            accessResult.setLastModified(System.currentTimeMillis());
+            accessResult.setMethod("GET");
+            accessResult.setMimeType("text/plain");
+            accessResult.setParentUrl("http://www.parent.com/");
+            accessResult.setRuleId("htmlRule");
+            accessResult.setSessionId("id1");
+            accessResult.setStatus(200);
+            accessResult.setUrl("http://www.id1.com/" + i);
+            dataService.store(accessResult);
+        }
+
+        dataService.setSearchAfterSize(10);
+        final Set<String> urlSet = new HashSet<>();
+        dataService.iterate("id1", accessResult -> assertTrue(urlSet.add(accessResult.getUrl())));
+        assertEquals(25, urlSet.size());
+
+        dataService.setSearchAfterEnabled(false);
+        urlSet.clear();
+        dataService.iterate("id1", accessResult -> assertTrue(urlSet.add(accessResult.getUrl())));
+        assertEquals(25, urlSet.size());
+
+        dataService.setSearchAfterEnabled(true);
+        dataService.delete("id1");
+        assertEquals(0, dataService.getCount("id1"));
+        dataService.setSearchAfterSize(1000);
+    }
+
+    public void test_delete_byQuery() {
+        for (int i = 0; i < 10; i++) {
+            final EsAccessResult accessResult = new EsAccessResult();
+            accessResult.setContentLength(Long.valueOf(10));
+            accessResult.setCreateTime(System.currentTimeMillis());
+            accessResult.setExecutionTime(10);
+            accessResult.setHttpStatusCode(200);
+            accessResult.setLastModified(System.currentTimeMillis());
+            accessResult.setMethod("GET");
+            accessResult.setMimeType("text/plain");
+            accessResult.setParentUrl("http://www.parent.com/");
+            accessResult.setRuleId("htmlRule");
+            accessResult.setSessionId(i % 2 == 0 ? "id1" : "id2");
+            accessResult.setStatus(200);
+            accessResult.setUrl("http://www.id1.com/" + i);
+            dataService.store(accessResult);
+        }
+
+        dataService.setDeleteByQueryEnabled(true);
+        try {
+            dataService.delete("id1");
+            assertEquals(0, dataService.getCount("id1"));
+            assertEquals(5, dataService.getCount("id2"));
+            assertNull(dataService.getAccessResult("id1", "http://www.id1.com/0"));
+            assertNotNull(dataService.getAccessResult("id2", "http://www.id1.com/1"));
+
+            dataService.deleteAll();
+            assertEquals(0, dataService.getCount("id2"));
+        } finally {
+            dataService.setDeleteByQueryEnabled(false);
+        }
+    }
+
+    public void test_getAccessResult_lazyData() {
+        final EsAccessResult accessResult1 = new EsAccessResult();
+        accessResult1.setContentLength(Long.valueOf(10));
+        accessResult1.setCreateTime(System.currentTimeMillis());
+        accessResult1.setExecutionTime(10);
+        accessResult1.setHttpStatusCode(200);
+        accessResult1.setLastModified(System.currentTimeMillis());
+        accessResult1.setMethod("GET");
+        accessResult1.setMimeType("text/plain");
+        accessResult1.setParentUrl("http://www.parent.com/");
+        accessResult1.setRuleId("htmlRule");
+        accessResult1.setSessionId("id1");
+        accessResult1.setStatus(200);
+        accessResult1.setUrl("http://www.id1.com/");
+        final EsAccessResultData accessResultData1 = new EsAccessResultData();
+        accessResultData1.setTransformerName("fileTransformer");
+        accessResultData1.setEncoding("UTF-8");
+        accessResultData1.setData("test data".getBytes(StandardCharsets.UTF_8));
+        accessResult1.setAccessResultData(accessResultData1);
+        dataService.store(accessResult1);
+
+        final EsAccessResult accessResult2 = dataService.getAccessResult("id1", "http://www.id1.com/");
+        assertNotNull(accessResult2);
+        assertEquals("fileTransformer", accessResult2.getAccessResultData().getTransformerName());
+        assertEquals("test data", accessResult2.getAccessResultData().getDataAsString());
+
+        // data is kept when the metadata is updated
+        final EsAccessResult accessResult3 = dataService.getAccessResult("id1", "http://www.id1.com/");
+        accessResult3.setMimeType("text/html");
+        dataService.update(accessResult3);
+        final List<EsAccessResult> accessResultList = new ArrayList<>();
+        dataService.iterate("id1", accessResultList::add);
+        assertEquals(1, accessResultList.size());
+        assertEquals("text/html", accessResultList.get(0).getMimeType());
+        assertEquals("test data", new String(accessResultList.get(0).getAccessResultData().getData(), StandardCharsets.UTF_8));
+    }
+
+    public void test_store_compressed() {
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            buf.append("test data ").append(i % 10).append('\n');
+        }
+        final String content = buf.toString();
+
+        dataService.setDataCompression(EsAccessResultData.DEFLATE);
+        try {
+            final EsAccessResult accessResult1 = new EsAccessResult();
+            accessResult1.setCreateTime(System.currentTimeMillis());
+            accessResult1.setMethod("GET");
+            accessResult1.setMimeType("text/plain");
+            accessResult1.setSessionId("id1");
+            accessResult1.setStatus(200);
+            accessResult1.setUrl("http://www.id1.com/");
+            final EsAccessResultData accessResultData1 = new EsAccessResultData();
+            accessResultData1.setTransformerName("fileTransformer");
+            accessResultData1.setEncoding("UTF-8");
+            accessResultData1.setData(content.getBytes(StandardCharsets.UTF_8));
+            accessResult1.setAccessResultData(accessResultData1);
+            dataService.store(accessResult1);
+
+            final GetResponse response = esClient.prepareGet().setIndex(dataService.getIndex()).setId(accessResult1.getId()).execute().actionGet();
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> source = (Map<String, Object>) response.getSource().get(EsAccessResult.ACCESS_RESULT_DATA);
+            assertEquals(EsAccessResultData.DEFLATE, source.get(EsAccessResultData.COMPRESSION));
+            assertTrue(((String) source.get(EsAccessResultData.DATA)).length() < content.length());
+
+            final EsAccessResult accessResult2 = dataService.getAccessResult("id1", "http://www.id1.com/");
+            assertEquals(content, accessResult2.getAccessResultData().getDataAsString());
+
+            // readable without compression
+            dataService.setDataCompression(null);
+            final EsAccessResult accessResult3 = dataService.getAccessResult("id1", "http://www.id1.com/");
+            assertEquals(content, accessResult3.getAccessResultData().getDataAsString());
+        } finally {
+            dataService.setDataCompression(null);
+        }
+    }
+
 }
@@ -17,15 +17,25 @@ package org.codelibs.fess.crawler.service.impl;
 
 import static org.codelibs.elasticsearch.runner.ElasticsearchClusterRunner.newConfigs;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Resource;
 
+import org.codelibs.core.lang.ThreadUtil;
 import org.codelibs.elasticsearch.runner.ElasticsearchClusterRunner;
 import org.codelibs.fess.crawler.client.EsClient;
+import org.codelibs.fess.crawler.entity.EsAccessResult;
+import org.codelibs.fess.crawler.entity.EsUrlFilter;
 import org.codelibs.fess.crawler.entity.EsUrlQueue;
 import org.codelibs.fess.crawler.service.impl.EsUrlQueueService;
 import org.dbflute.utflute.lastadi.LastaDiTestCase;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.index.query.QueryBuilders;
 
 /**
@@ -36,6 +46,9 @@ public class EsUrlQueueServiceTest extends LastaDiTestCase {
     @Resource
     private  EsUrlQueueService urlQueueService;
 
+    @Resource
+    private  EsDataService dataService;
+
     @Resource
     private  EsClient esClient;
 
@@ -132,4 +145,198 @@ public class EsUrlQueueServiceTest extends LastaDiTestCase {
         assertFalse(esClient.prepareSearch(".crawler.queue").setTypes("queue").setQuery(QueryBuilders.termQuery("sessionId", "id2")).execute()
                 .actionGet().getHits().getTotalHits().value > 0);
     }
+
+    public void test_offerAll_duplicated() {
+        final EsAccessResult accessResult = new EsAccessResult();
+        accessResult.setSessionId("id1");
+        accessResult.setUrl("http://www.example.com/stored");
+        accessResult.setMethod("GET");
+        accessResult.setContentLength(Long.valueOf(10));
+        accessResult.setCreateTime(System.currentTimeMillis());
+        accessResult.setExecutionTime(10);
+        accessResult.setHttpStatusCode(200);
+        accessResult.setLastModified(System.currentTimeMillis());
+        accessResult.setMimeType("text/plain");
+        accessResult.setRuleId("htmlRule");
+        accessResult.setStatus(200);
+        dataService.store(accessResult);
+
+        urlQueueService.add("id1", "http://www.example.com/queued");
+
+        final List<EsUrlQueue> urlQueueList = new ArrayList<>();
+        urlQueueList.add(createUrlQueue("http://www.example.com/stored"));
+        urlQueueList.add(createUrlQueue("http://www.example.com/queued"));
+        urlQueueList.add(createUrlQueue("http://www.example.com/new"));
+        urlQueueList.add(createUrlQueue("http://www.example.com/new"));
+        urlQueueList.add(createUrlQueue(""));
+        urlQueueService.offerAll("id1", urlQueueList);
+
+        assertEquals(2, esClient.prepareSearch(".crawler.queue").setQuery(QueryBuilders.termQuery("sessionId", "id1")).setSize(0)
+                .execute().actionGet().getHits().getTotalHits().value);
+
+        // polled urls are checked in memory
+        assertNotNull(urlQueueService.poll("id1"));
+        assertNotNull(urlQueueService.poll("id1"));
+        assertNull(urlQueueService.poll("id1"));
+        final List<EsUrlQueue> urlQueueList2 = new ArrayList<>();
+        urlQueueList2.add(createUrlQueue("http://www.example.com/queued"));
+        urlQueueList2.add(createUrlQueue("http://www.example.com/new"));
+        urlQueueService.offerAll("id1", urlQueueList2);
+        assertNull(urlQueueService.poll("id1"));
+
+        urlQueueService.delete("id1");
+        dataService.delete("id1");
+    }
+
+    public void test_poll_noRefresh() {
+        urlQueueService.setRefreshPolicy(RefreshPolicy.NONE);
+        try {
+            final List<EsUrlQueue> urlQueueList = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                urlQueueList.add(createUrlQueue("http://www.example.com/" + i));
+            }
+            urlQueueService.offerAll("id1", urlQueueList);
+
+            // written urls are found without refresh
+            final EsUrlQueue urlQueue = createUrlQueue("http://www.example.com/0");
+            urlQueue.setSessionId("id1");
+            assertTrue(urlQueueService.visited(urlQueue));
+
+            int count = 0;
+            while (urlQueueService.poll("id1") != null) {
+                count++;
+            }
+            assertEquals(10, count);
+
+            urlQueueService.clearCache();
+            // deleted urls are not polled again
+            assertNull(urlQueueService.poll("id1"));
+        } finally {
+            urlQueueService.setRefreshPolicy(RefreshPolicy.IMMEDIATE);
+            urlQueueService.delete("id1");
+        }
+    }
+
+    public void test_poll_prefetch() {
+        urlQueueService.setPollingFetchSize(5);
+        urlQueueService.setPrefetchThreshold(3);
+        try {
+            final List<EsUrlQueue> urlQueueList = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                urlQueueList.add(createUrlQueue("http://www.example.com/" + i));
+            }
+            urlQueueService.offerAll("id1", urlQueueList);
+
+            final Set<String> urlSet = new HashSet<>();
+            int prefetchCount = 0;
+            EsUrlQueue urlQueue;
+            while ((urlQueue = urlQueueService.poll("id1")) != null) {
+                assertTrue(urlSet.add(urlQueue.getUrl()));
+                final Queue<EsUrlQueue> waitingQueue = urlQueueService.sessionCache.get("id1").waitingQueue;
+                final int size = waitingQueue.size();
+                ThreadUtil.sleep(100L);
+                if (waitingQueue.size() > size) {
+                    // refilled without poll
+                    prefetchCount++;
+                }
+            }
+            assertEquals(20, urlSet.size());
+            assertTrue(prefetchCount > 0);
+        } finally {
+            urlQueueService.setPollingFetchSize(1000);
+            urlQueueService.setPrefetchThreshold(0);
+            urlQueueService.delete("id1");
+        }
+    }
+
+    public void test_poll_preferred() {
+        urlQueueService.setPollingFetchSize(5);
+        try {
+            final List<EsUrlQueue> urlQueueList = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                urlQueueList.add(createUrlQueue("http://www" + (i % 2) + ".example.com/" + i));
+            }
+            urlQueueService.offerAll("id1", urlQueueList);
+
+            // urls are only in the index
+            urlQueueService.clearCache();
+            assertTrue(urlQueueService.hasWaitingUrls("id1"));
+
+            // no preferred url, but urls are fetched from the index
+            assertNull(urlQueueService.poll("id1", uq -> false));
+            assertTrue(urlQueueService.hasWaitingUrls("id1"));
+
+            final Set<String> urlSet = new HashSet<>();
+            EsUrlQueue urlQueue;
+            while ((urlQueue = urlQueueService.poll("id1", uq -> uq.getUrl().startsWith("http://www0."))) != null) {
+                assertTrue(urlSet.add(urlQueue.getUrl()));
+            }
+            assertEquals(5, urlSet.size());
+            assertTrue(urlQueueService.hasWaitingUrls("id1"));
+
+            while ((urlQueue = urlQueueService.poll("id1", uq -> true)) != null) {
+                assertTrue(urlSet.add(urlQueue.getUrl()));
+            }
+            assertEquals(10, urlSet.size());
+            assertFalse(urlQueueService.hasWaitingUrls("id1"));
+        } finally {
+            urlQueueService.setPollingFetchSize(1000);
+            urlQueueService.delete("id1");
+        }
+    }
+
+    public void test_pollBatch_childUrl() {
+        try {
+            final List<EsUrlQueue> urlQueueList = new ArrayList<>();
+            urlQueueList.add(createUrlQueue("http://www.example.com/"));
+            urlQueueList.add(createUrlQueue("http://www.example.com/a.html"));
+            urlQueueService.offerAll("id1", urlQueueList);
+
+            final List<EsUrlQueue> polledList = urlQueueService.pollBatch("id1", 2);
+            assertEquals(2, polledList.size());
+
+            // a child url of the first page points at the prefetched page
+            final EsUrlQueue childUrlQueue = createUrlQueue("http://www.example.com/a.html");
+            childUrlQueue.setSessionId("id1");
+            assertTrue(urlQueueService.visited(childUrlQueue));
+            final List<EsUrlQueue> childList = new ArrayList<>();
+            childList.add(childUrlQueue);
+            urlQueueService.offerAll("id1", childList);
+            assertNull(urlQueueService.poll("id1"));
+
+            // released urls are checked until they are evicted from the crawling queue
+            polledList.forEach(uq -> urlQueueService.release("id1", uq));
+            assertTrue(urlQueueService.visited(childUrlQueue));
+        } finally {
+            urlQueueService.delete("id1");
+        }
+    }
+
+    public void test_parseSource() {
+        final EsUrlQueue urlQueue = urlQueueService.parseSource(EsUrlQueue.class, new BytesArray(
+                "{\"sessionId\":\"id1\",\"method\":\"GET\",\"url\":\"http://www.example.com/\",\"parentUrl\":\" \","
+                        + "\"depth\":2,\"lastModified\":null,\"createTime\":1000,\"unknown\":{\"a\":[1,2]}}"));
+        assertEquals("id1", urlQueue.getSessionId());
+        assertEquals("GET", urlQueue.getMethod());
+        assertEquals("http://www.example.com/", urlQueue.getUrl());
+        assertNull(urlQueue.getParentUrl());
+        assertEquals(Integer.valueOf(2), urlQueue.getDepth());
+        assertNull(urlQueue.getLastModified());
+        assertEquals(Long.valueOf(1000L), urlQueue.getCreateTime());
+
+        final EsUrlFilter urlFilter = urlQueueService.parseSource(EsUrlFilter.class,
+                new BytesArray("{\"sessionId\":\"id1\",\"filterType\":\"I\",\"url\":\"http://www.example.com/.*\"}"));
+        assertEquals("id1", urlFilter.getSessionId());
+        assertEquals("I", urlFilter.getFilterType());
+        assertEquals("http://www.example.com/.*", urlFilter.getUrl());
+    }
+
+    private EsUrlQueue createUrlQueue(final String url) {
+        final EsUrlQueue urlQueue = new EsUrlQueue();
+        urlQueue.setCreateTime(System.currentTimeMillis());
+        urlQueue.setDepth(1);
+        urlQueue.setMethod("GET");
+        urlQueue.setUrl(url);
+        return urlQueue;
+    }
 }
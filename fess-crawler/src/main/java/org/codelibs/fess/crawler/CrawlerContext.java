@@ -16,7 +16,10 @@
 package org.codelibs.fess.crawler;
 
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.codelibs.core.collection.LruHashSet;
 import org.codelibs.fess.crawler.filter.UrlFilter;
@@ -36,6 +39,18 @@ public class CrawlerContext {
 
     protected AtomicLong accessCount = new AtomicLong(0);
 
+    protected final ReentrantLock idleLock = new ReentrantLock();
+
+    protected final Condition newUrlCondition = idleLock.newCondition();
+
+    protected int runningThreadCount = 0;
+
+    protected int idleThreadCount = 0;
+
+    protected volatile long urlQueueVersion = 0;
+
+    protected volatile boolean urlQueueDrained = false;
+
     protected volatile CrawlerStatus status = CrawlerStatus.INITIALIZING;
 
     protected UrlFilter urlFilter;
@@ -174,4 +189,88 @@ public class CrawlerContext {
         }
         return sitemaps;
     }
+
+    public void startThread() {
+        idleLock.lock();
+        try {
+            runningThreadCount++;
+        } finally {
+            idleLock.unlock();
+        }
+    }
+
+    public void finishThread() {
+        idleLock.lock();
+        try {
+            runningThreadCount--;
+            // idle threads may be the last ones
+            newUrlCondition.signalAll();
+        } finally {
+            idleLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a version which is incremented when urls may be added to the queue.
+     *
+     * @return a version of the queue
+     */
+    public long getUrlQueueVersion() {
+        return urlQueueVersion;
+    }
+
+    /**
+     * Wakes up threads waiting for new urls.
+     */
+    public void signalNewUrls() {
+        idleLock.lock();
+        try {
+            urlQueueVersion++;
+            newUrlCondition.signalAll();
+        } finally {
+            idleLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until new urls may be queued after a given version.
+     * When all running threads are waiting and no url is queued,
+     * crawling is finished and all threads are woken up.
+     *
+     * @param version a version of the queue when it was polled
+     * @param timeoutMillis a max time to wait
+     * @return false if crawling is finished
+     */
+    public boolean awaitNewUrls(final long version, final long timeoutMillis) {
+        idleLock.lock();
+        try {
+            if (urlQueueVersion != version) {
+                return !urlQueueDrained;
+            }
+            idleThreadCount++;
+            try {
+                long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+                while (urlQueueVersion == version && !urlQueueDrained && nanos > 0) {
+                    if (idleThreadCount >= runningThreadCount) {
+                        urlQueueDrained = true;
+                        newUrlCondition.signalAll();
+                        break;
+                    }
+                    nanos = newUrlCondition.awaitNanos(nanos);
+                }
+            } finally {
+                idleThreadCount--;
+            }
+            return !urlQueueDrained;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            idleLock.unlock();
+        }
+    }
+
+    public boolean isUrlQueueDrained() {
+        return urlQueueDrained;
+    }
 }
@@ -16,9 +16,18 @@
 package org.codelibs.fess.crawler;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.annotation.Resource;
@@ -26,7 +35,9 @@ import javax.annotation.Resource;
 import org.codelibs.core.io.CloseableUtil;
 import org.codelibs.core.lang.StringUtil;
 import org.codelibs.core.lang.SystemUtil;
+import org.codelibs.core.lang.ThreadUtil;
 import org.codelibs.fess.crawler.builder.RequestDataBuilder;
+import org.codelibs.fess.crawler.client.AsyncCrawlerClient;
 import org.codelibs.fess.crawler.client.CrawlerClient;
 import org.codelibs.fess.crawler.client.CrawlerClientFactory;
 import org.codelibs.fess.crawler.container.CrawlerContainer;
@@ -69,6 +80,26 @@ public class CrawlerThread implements Runnable {
 
     protected boolean noWaitOnFolder = false;
 
+    protected boolean hostAwarePolling = false;
+
+    protected int pollingBatchSize = 1;
+
+    protected long busyHostWaitMillis = 100L;
+
+    protected boolean busyHostSkipped = false;
+
+    protected boolean idleSignalEnabled = false;
+
+    protected long maxIdleWaitMillis = 1000L;
+
+    protected final Queue<UrlQueue<?>> prefetchedUrlQueueList = new LinkedList<>();
+
+    protected int maxInFlightRequestsPerThread = 0;
+
+    protected final Set<InFlightRequest> inFlightRequestSet = new HashSet<>();
+
+    protected final BlockingQueue<InFlightRequest> completedRequestQueue = new LinkedBlockingQueue<>();
+
     protected void startCrawling() {
         synchronized (crawlerContext.activeThreadCountLock) {
             crawlerContext.activeThreadCount++;
@@ -79,6 +110,8 @@ public class CrawlerThread implements Runnable {
         synchronized (crawlerContext.activeThreadCountLock) {
             crawlerContext.activeThreadCount--;
         }
+        // child urls may be added
+        crawlerContext.signalNewUrls();
     }
 
     protected boolean isContinue(final int tcCount) {
@@ -123,11 +156,22 @@ public class CrawlerThread implements Runnable {
         CrawlingParameterUtil.setCrawlerContext(crawlerContext);
         CrawlingParameterUtil.setUrlQueueService(urlQueueService);
         CrawlingParameterUtil.setDataService(dataService);
+        crawlerContext.startThread();
         try {
             while (crawlerContext.getStatus() != CrawlerStatus.DONE && isContinue(threadCheckCount)) {
-                final UrlQueue<?> urlQueue = urlQueueService.poll(crawlerContext.sessionId);
+                if (!inFlightRequestSet.isEmpty()) {
+                    final boolean full = inFlightRequestSet.size() >= maxInFlightRequestsPerThread;
+                    processCompletedRequests(full ? maxIdleWaitMillis : 0L);
+                    if (full) {
+                        continue;
+                    }
+                }
+
+                final long urlQueueVersion = crawlerContext.getUrlQueueVersion();
+                final UrlQueue<?> urlQueue = pollUrlQueue();
                 if (isValid(urlQueue)) {
                     ResponseData responseData = null;
+                    boolean sent = false;
                     log(logHelper, LogType.START_CRAWLING, crawlerContext, urlQueue);
                     try {
                         final CrawlerClient client = getClient(urlQueue.getUrl());
@@ -151,24 +195,22 @@ public class CrawlerThread implements Runnable {
                             log(logHelper, LogType.GET_CONTENT, crawlerContext, urlQueue);
                             // access an url
                             final long startTime = SystemUtil.currentTimeMillis();
-                            responseData = client.execute(
-                                    RequestDataBuilder.newRequestData().method(urlQueue.getMethod()).url(urlQueue.getUrl()).build());
-                            responseData.setExecutionTime(SystemUtil.currentTimeMillis() - startTime);
-                            responseData.setParentUrl(urlQueue.getParentUrl());
-                            responseData.setSessionId(crawlerContext.sessionId);
-
-                            if (responseData.getRedirectLocation() == null) {
-                                log(logHelper, LogType.PROCESS_RESPONSE, crawlerContext, urlQueue, responseData);
-                                processResponse(urlQueue, responseData);
+                            final RequestData requestData = RequestDataBuilder.newRequestData().method(urlQueue.getMethod())
+                                    .url(urlQueue.getUrl()).ifNoneMatch(urlQueue.getEtag()).ifModifiedSince(urlQueue.getLastModified())
+                                    .build();
+                            if (isAsync(client)) {
+                                // a response is processed by this thread later
+                                sendRequest(urlQueue, (AsyncCrawlerClient) client, requestData, startTime);
+                                sent = true;
                             } else {
-                                log(logHelper, LogType.REDIRECT_LOCATION, crawlerContext, urlQueue, responseData);
-                                // redirect
-                                storeChildUrl(responseData.getRedirectLocation(), urlQueue.getUrl(), null,
-                                        urlQueue.getDepth() == null ? 1 : urlQueue.getDepth() + 1);
+                                responseData = client.execute(requestData);
+                                handleResponse(urlQueue, responseData, startTime);
                             }
                         }
 
-                        log(logHelper, LogType.FINISHED_CRAWLING, crawlerContext, urlQueue);
+                        if (!sent) {
+                            log(logHelper, LogType.FINISHED_CRAWLING, crawlerContext, urlQueue);
+                        }
                     } catch (final ChildUrlsException e) {
                         try {
                             final Set<RequestData> childUrlSet = e.getChildUrlList();
@@ -191,17 +233,45 @@ public class CrawlerThread implements Runnable {
                         if (responseData != null) {
                             CloseableUtil.closeQuietly(responseData);
                         }
-                        if (crawlerContext.intervalController != null) {
+                        if (!sent && crawlerContext.intervalController != null) {
                             crawlerContext.intervalController.delay(IntervalController.POST_PROCESSING);
                         }
                         threadCheckCount = 0; // clear
                         // remove urlQueue from thread
                         CrawlingParameterUtil.setUrlQueue(null);
-                        finishCrawling();
+                        if (!sent) {
+                            finishCrawling();
+                            urlQueueService.release(crawlerContext.sessionId, urlQueue);
+                        }
                     }
                 } else {
+                    if (urlQueue != null) {
+                        // an invalid url is not crawled
+                        urlQueueService.release(crawlerContext.sessionId, urlQueue);
+                    }
+
+                    if (!inFlightRequestSet.isEmpty()) {
+                        // responses may have new urls
+                        processCompletedRequests(maxIdleWaitMillis);
+                        continue;
+                    }
+
+                    if (urlQueue == null && (busyHostSkipped || urlQueueService.hasWaitingUrls(crawlerContext.sessionId))) {
+                        // urls remain, but their hosts are busy
+                        ThreadUtil.sleep(busyHostWaitMillis);
+                        continue;
+                    }
+
                     log(logHelper, LogType.NO_URL_IN_QUEUE, crawlerContext, urlQueue, Integer.valueOf(threadCheckCount));
 
+                    if (idleSignalEnabled) {
+                        // wait for urls added by other threads
+                        if (urlQueue == null && !crawlerContext.awaitNewUrls(urlQueueVersion, maxIdleWaitMillis)) {
+                            break;
+                        }
+                        continue;
+                    }
+
                     if (crawlerContext.intervalController != null) {
                         crawlerContext.intervalController.delay(IntervalController.NO_URL_IN_QUEUE);
                     }
@@ -217,6 +287,9 @@ public class CrawlerThread implements Runnable {
         } catch (final Throwable t) {
             log(logHelper, LogType.SYSTEM_ERROR, t);
         } finally {
+            awaitInFlightRequests();
+            restorePrefetchedUrlQueues();
+            crawlerContext.finishThread();
             // remove crawlerContext from thread
             CrawlingParameterUtil.setCrawlerContext(null);
             CrawlingParameterUtil.setUrlQueueService(null);
@@ -225,6 +298,198 @@ public class CrawlerThread implements Runnable {
         log(logHelper, LogType.FINISHED_THREAD, crawlerContext);
     }
 
+    protected boolean isAsync(final CrawlerClient client) {
+        return maxInFlightRequestsPerThread > 0 && client instanceof AsyncCrawlerClient;
+    }
+
+    protected void handleResponse(final UrlQueue<?> urlQueue, final ResponseData responseData, final long startTime) {
+        responseData.setExecutionTime(SystemUtil.currentTimeMillis() - startTime);
+        responseData.setParentUrl(urlQueue.getParentUrl());
+        responseData.setSessionId(crawlerContext.sessionId);
+
+        if (responseData.getStatus() == Constants.NOT_MODIFIED_STATUS) {
+            log(logHelper, LogType.NOT_MODIFIED, crawlerContext, urlQueue);
+            // 304 response may not have validators
+            if (responseData.getLastModified() == null && urlQueue.getLastModified() != null) {
+                responseData.setLastModified(new Date(urlQueue.getLastModified().longValue()));
+            }
+            if (responseData.getEtag() == null) {
+                responseData.setEtag(urlQueue.getEtag());
+            }
+            // 304 response may not have a content type, so rules are matched with the previous one
+            if (urlQueue.getMimeType() != null) {
+                responseData.setMimeType(urlQueue.getMimeType());
+            }
+        }
+
+        if (responseData.getRedirectLocation() == null) {
+            log(logHelper, LogType.PROCESS_RESPONSE, crawlerContext, urlQueue, responseData);
+            processResponse(urlQueue, responseData);
+        } else {
+            log(logHelper, LogType.REDIRECT_LOCATION, crawlerContext, urlQueue, responseData);
+            // redirect
+            storeChildUrl(responseData.getRedirectLocation(), urlQueue.getUrl(), null,
+                    urlQueue.getDepth() == null ? 1 : urlQueue.getDepth() + 1);
+        }
+    }
+
+    /**
+     * Sends a request without waiting for the response.
+     * The url queue stays active until the response is processed by processCompletedRequests.
+     *
+     * @param urlQueue an url queue
+     * @param client a client
+     * @param requestData request data
+     * @param startTime time when the crawling started
+     */
+    protected void sendRequest(final UrlQueue<?> urlQueue, final AsyncCrawlerClient client, final RequestData requestData,
+            final long startTime) {
+        CompletableFuture<ResponseData> future;
+        try {
+            future = client.executeAsync(requestData);
+        } catch (final Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        final InFlightRequest request = new InFlightRequest(urlQueue, future, startTime);
+        inFlightRequestSet.add(request);
+        future.whenComplete((r, t) -> completedRequestQueue.offer(request));
+    }
+
+    /**
+     * Processes received responses.
+     *
+     * @param timeout time to wait for a response in milliseconds, or 0 not to wait
+     */
+    protected void processCompletedRequests(final long timeout) {
+        InFlightRequest request;
+        try {
+            request = timeout > 0 ? completedRequestQueue.poll(timeout, TimeUnit.MILLISECONDS) : completedRequestQueue.poll();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        while (request != null) {
+            processCompletedRequest(request);
+            request = completedRequestQueue.poll();
+        }
+    }
+
+    protected void processCompletedRequest(final InFlightRequest request) {
+        inFlightRequestSet.remove(request);
+        final UrlQueue<?> urlQueue = request.urlQueue;
+        ResponseData responseData = null;
+        CrawlingParameterUtil.setUrlQueue(urlQueue);
+        try {
+            responseData = request.future.join();
+            handleResponse(urlQueue, responseData, request.startTime);
+            log(logHelper, LogType.FINISHED_CRAWLING, crawlerContext, urlQueue);
+        } catch (final Throwable t) {
+            final Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (cause instanceof ChildUrlsException) {
+                try {
+                    final Set<RequestData> childUrlSet = ((ChildUrlsException) cause).getChildUrlList();
+                    log(logHelper, LogType.PROCESS_CHILD_URLS_BY_EXCEPTION, crawlerContext, urlQueue, childUrlSet);
+                    // add an url
+                    storeChildUrls(childUrlSet, urlQueue.getUrl(), urlQueue.getDepth() == null ? 1 : urlQueue.getDepth() + 1);
+                } catch (final Exception e1) {
+                    log(logHelper, LogType.CRAWLING_EXCETPION, crawlerContext, urlQueue, e1);
+                }
+            } else if (cause instanceof CrawlingAccessException) {
+                log(logHelper, LogType.CRAWLING_ACCESS_EXCEPTION, crawlerContext, urlQueue, cause);
+            } else {
+                log(logHelper, LogType.CRAWLING_EXCETPION, crawlerContext, urlQueue, cause);
+            }
+        } finally {
+            if (responseData != null) {
+                CloseableUtil.closeQuietly(responseData);
+            }
+            if (crawlerContext.intervalController != null) {
+                crawlerContext.intervalController.delay(IntervalController.POST_PROCESSING);
+            }
+            CrawlingParameterUtil.setUrlQueue(null);
+            finishCrawling();
+            urlQueueService.release(crawlerContext.sessionId, urlQueue);
+        }
+    }
+
+    protected void awaitInFlightRequests() {
+        while (!inFlightRequestSet.isEmpty()) {
+            try {
+                processCompletedRequest(completedRequestQueue.take());
+            } catch (final InterruptedException e) {
+                // stop waiting for responses
+                inFlightRequestSet.forEach(request -> request.future.cancel(false));
+                // all requests are completed, so they are processed without waiting
+                new ArrayList<>(inFlightRequestSet).forEach(this::processCompletedRequest);
+                completedRequestQueue.clear();
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    protected UrlQueue<?> pollUrlQueue() {
+        final boolean hostAware = hostAwarePolling && crawlerContext.intervalController != null;
+        busyHostSkipped = false;
+        if (pollingBatchSize <= 1) {
+            if (hostAware) {
+                // skip urls which wait for a busy host
+                return urlQueueService.poll(crawlerContext.sessionId, this::isReady);
+            }
+            return urlQueueService.poll(crawlerContext.sessionId);
+        }
+
+        if (prefetchedUrlQueueList.isEmpty()) {
+            prefetchedUrlQueueList.addAll(urlQueueService.pollBatch(crawlerContext.sessionId, pollingBatchSize));
+        }
+        if (hostAware) {
+            final Iterator<UrlQueue<?>> iterator = prefetchedUrlQueueList.iterator();
+            while (iterator.hasNext()) {
+                final UrlQueue<?> urlQueue = iterator.next();
+                if (isReady(urlQueue)) {
+                    iterator.remove();
+                    return urlQueue;
+                }
+            }
+            if (!prefetchedUrlQueueList.isEmpty()) {
+                // all prefetched urls wait for busy hosts
+                return urlQueueService.poll(crawlerContext.sessionId, this::isReady);
+            }
+        }
+        return prefetchedUrlQueueList.poll();
+    }
+
+    /**
+     * Checks if a host of a given url can be accessed now.
+     * A busy host is recorded so that the thread waits for it instead of finishing.
+     *
+     * @param urlQueue an url queue
+     * @return true if the host is ready
+     */
+    protected boolean isReady(final UrlQueue<?> urlQueue) {
+        if (crawlerContext.intervalController.isReady(urlQueue.getUrl())) {
+            return true;
+        }
+        busyHostSkipped = true;
+        return false;
+    }
+
+    protected void restorePrefetchedUrlQueues() {
+        if (prefetchedUrlQueueList.isEmpty()) {
+            return;
+        }
+        UrlQueue<?> urlQueue;
+        while ((urlQueue = prefetchedUrlQueueList.poll()) != null) {
+            try {
+                urlQueueService.insert(urlQueue);
+                urlQueueService.release(crawlerContext.sessionId, urlQueue);
+            } catch (final Exception e) {
+                log(logHelper, LogType.CRAWLING_EXCETPION, crawlerContext, urlQueue, e);
+            }
+        }
+        crawlerContext.signalNewUrls();
+    }
+
     protected void addSitemapsFromRobotsTxt(final UrlQueue<?> urlQueue) {
         final String[] sitemaps = crawlerContext.removeSitemaps();
         if (sitemaps != null) {
@@ -243,6 +508,10 @@ public class CrawlerThread implements Runnable {
     }
 
     protected boolean isContentUpdated(final CrawlerClient client, final UrlQueue<?> urlQueue) {
+        if (client.isConditionalRequestSupported()) {
+            // a GET request is sent with validators of urlQueue
+            return true;
+        }
         if (urlQueue.getLastModified() != null) {
             log(logHelper, LogType.CHECK_LAST_MODIFIED, crawlerContext, urlQueue);
             final long startTime = SystemUtil.currentTimeMillis();
@@ -361,4 +630,81 @@ public class CrawlerThread implements Runnable {
     public void setNoWaitOnFolder(final boolean noWaitOnFolder) {
         this.noWaitOnFolder = noWaitOnFolder;
     }
+
+    public boolean isHostAwarePolling() {
+        return hostAwarePolling;
+    }
+
+    public void setHostAwarePolling(final boolean hostAwarePolling) {
+        this.hostAwarePolling = hostAwarePolling;
+    }
+
+    public int getPollingBatchSize() {
+        return pollingBatchSize;
+    }
+
+    public void setPollingBatchSize(final int pollingBatchSize) {
+        this.pollingBatchSize = pollingBatchSize;
+    }
+
+    public long getBusyHostWaitMillis() {
+        return busyHostWaitMillis;
+    }
+
+    /**
+     * Sets time to wait when all queued urls wait for busy hosts.
+     * It's used when hostAwarePolling is enabled or the queue keeps host intervals.
+     *
+     * @param busyHostWaitMillis time in milliseconds
+     */
+    public void setBusyHostWaitMillis(final long busyHostWaitMillis) {
+        this.busyHostWaitMillis = busyHostWaitMillis;
+    }
+
+    public boolean isIdleSignalEnabled() {
+        return idleSignalEnabled;
+    }
+
+    public void setIdleSignalEnabled(final boolean idleSignalEnabled) {
+        this.idleSignalEnabled = idleSignalEnabled;
+    }
+
+    public int getMaxInFlightRequestsPerThread() {
+        return maxInFlightRequestsPerThread;
+    }
+
+    /**
+     * Sets the maximum number of requests which this thread sends without waiting for responses.
+     * It's used for AsyncCrawlerClient, and responses are processed by this thread.
+     * If it's 0, this thread waits for each response.
+     * A client may also bound requests of all threads, such as maxInFlightRequests of JdkHttpClient.
+     * In that case, this thread blocks in sending a request until the client has room.
+     *
+     * @param maxInFlightRequestsPerThread the maximum number of requests in flight for this thread
+     */
+    public void setMaxInFlightRequestsPerThread(final int maxInFlightRequestsPerThread) {
+        this.maxInFlightRequestsPerThread = maxInFlightRequestsPerThread;
+    }
+
+    public long getMaxIdleWaitMillis() {
+        return maxIdleWaitMillis;
+    }
+
+    public void setMaxIdleWaitMillis(final long maxIdleWaitMillis) {
+        this.maxIdleWaitMillis = maxIdleWaitMillis;
+    }
+
+    protected static class InFlightRequest {
+        protected final UrlQueue<?> urlQueue;
+
+        protected final CompletableFuture<ResponseData> future;
+
+        protected final long startTime;
+
+        protected InFlightRequest(final UrlQueue<?> urlQueue, final CompletableFuture<ResponseData> future, final long startTime) {
+            this.urlQueue = urlQueue;
+            this.future = future;
+            this.startTime = startTime;
+        }
+    }
 }
@@ -78,6 +78,16 @@ public final class RequestDataBuilder {
             return this;
         }
 
+        public RequestDataContext ifNoneMatch(final String etag) {
+            data.setIfNoneMatch(etag);
+            return this;
+        }
+
+        public RequestDataContext ifModifiedSince(final Long lastModified) {
+            data.setIfModifiedSince(lastModified);
+            return this;
+        }
+
         public RequestData build() {
             return data;
         }
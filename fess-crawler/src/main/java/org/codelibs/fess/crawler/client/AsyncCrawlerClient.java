@@ -0,0 +1,40 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.client;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.codelibs.fess.crawler.entity.RequestData;
+import org.codelibs.fess.crawler.entity.ResponseData;
+
+/**
+ * AsyncCrawlerClient accesses a resource without blocking a calling thread.
+ *
+ * @author shinsuke
+ *
+ */
+public interface AsyncCrawlerClient extends CrawlerClient {
+
+    /**
+     * Sends a request. A returned future completes with response data,
+     * or exceptionally with CrawlerSystemException or its subclasses.
+     *
+     * @param request request data
+     * @return a future of response data
+     */
+    CompletableFuture<ResponseData> executeAsync(RequestData request);
+
+}
@@ -30,4 +30,15 @@ public interface CrawlerClient {
 
     ResponseData execute(RequestData data);
 
+    /**
+     * Checks if this client sends If-None-Match and If-Modified-Since of request data,
+     * and returns 304 response when a content is not modified.
+     * The default implementation returns false.
+     *
+     * @return true if a conditional request is supported
+     */
+    default boolean isConditionalRequestSupported() {
+        return false;
+    }
+
 }
@@ -18,6 +18,9 @@ package org.codelibs.fess.crawler.client;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.codelibs.core.lang.ThreadUtil;
@@ -32,7 +35,7 @@ import org.slf4j.LoggerFactory;
  * @author shinsuke
  *
  */
-public class FaultTolerantClient implements CrawlerClient {
+public class FaultTolerantClient implements AsyncCrawlerClient {
 
     private static final Logger logger = LoggerFactory.getLogger(FaultTolerantClient.class);
 
@@ -85,9 +88,7 @@ public class FaultTolerantClient implements CrawlerClient {
                 ThreadUtil.sleep(retryInterval);
                 count++;
             }
-            final String message = "Failed to access to " + request.getUrl()
-                    + exceptionList.stream().map(e -> "; " + e.getMessage()).collect(Collectors.joining());
-            throw new MultipleCrawlingAccessException(message, exceptionList.toArray(new Throwable[exceptionList.size()]));
+            throw createMultipleCrawlingAccessException(request, exceptionList);
         } finally {
             if (listener != null) {
                 listener.onRequestEnd(this, request, exceptionList);
@@ -95,6 +96,92 @@ public class FaultTolerantClient implements CrawlerClient {
         }
     }
 
+    /**
+     * Sends a request without blocking if the wrapped client is AsyncCrawlerClient.
+     * Otherwise, the request is executed on a calling thread.
+     *
+     * @param request request data
+     * @return a future of response data
+     */
+    @Override
+    public CompletableFuture<ResponseData> executeAsync(final RequestData request) {
+        if (!(client instanceof AsyncCrawlerClient)) {
+            try {
+                return CompletableFuture.completedFuture(execute(request));
+            } catch (final Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        if (listener != null) {
+            listener.onRequestStart(this, request);
+        }
+
+        final List<Exception> exceptionList = new ArrayList<>();
+        final CompletableFuture<ResponseData> future = new CompletableFuture<>();
+        executeAsync(request, 0, exceptionList, future);
+        return future.whenComplete((responseData, t) -> {
+            if (listener != null) {
+                listener.onRequestEnd(this, request, exceptionList.isEmpty() ? null : exceptionList);
+            }
+        });
+    }
+
+    protected void executeAsync(final RequestData request, final int count, final List<Exception> exceptionList,
+            final CompletableFuture<ResponseData> future) {
+        if (listener != null) {
+            listener.onRequest(this, request, count);
+        }
+
+        CompletableFuture<ResponseData> attempt;
+        try {
+            attempt = ((AsyncCrawlerClient) client).executeAsync(request);
+        } catch (final Exception e) {
+            attempt = CompletableFuture.failedFuture(e);
+        }
+        attempt.whenComplete((responseData, t) -> {
+            if (t == null) {
+                future.complete(responseData);
+                return;
+            }
+
+            final Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (cause instanceof MaxLengthExceededException || !(cause instanceof Exception)) {
+                future.completeExceptionally(cause);
+                return;
+            }
+
+            final Exception e = (Exception) cause;
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to access to {}", request.getUrl(), e);
+            }
+
+            if (listener != null) {
+                listener.onException(this, request, count, e);
+            }
+
+            exceptionList.add(e);
+            if (count + 1 < maxRetryCount) {
+                CompletableFuture.delayedExecutor(retryInterval, TimeUnit.MILLISECONDS)
+                        .execute(() -> executeAsync(request, count + 1, exceptionList, future));
+            } else {
+                future.completeExceptionally(createMultipleCrawlingAccessException(request, exceptionList));
+            }
+        });
+    }
+
+    @Override
+    public boolean isConditionalRequestSupported() {
+        return client.isConditionalRequestSupported();
+    }
+
+    protected MultipleCrawlingAccessException createMultipleCrawlingAccessException(final RequestData request,
+            final List<Exception> exceptionList) {
+        final String message = "Failed to access to " + request.getUrl()
+                + exceptionList.stream().map(e -> "; " + e.getMessage()).collect(Collectors.joining());
+        return new MultipleCrawlingAccessException(message, exceptionList.toArray(new Throwable[exceptionList.size()]));
+    }
+
     public CrawlerClient getCrawlerClient() {
         return client;
     }
@@ -18,6 +18,7 @@ package org.codelibs.fess.crawler.client.http;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.pool.ConnPoolControl;
 import org.codelibs.core.timer.TimeoutTarget;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,6 +56,9 @@ public class HcConnectionMonitorTarget implements TimeoutTarget {
             clientConnectionManager.closeExpiredConnections();
             // Close idle connections
             clientConnectionManager.closeIdleConnections(idleConnectionTimeout, TimeUnit.MILLISECONDS);
+            if (logger.isDebugEnabled() && clientConnectionManager instanceof ConnPoolControl) {
+                logger.debug("Connection pool: {}", ((ConnPoolControl<?>) clientConnectionManager).getTotalStats());
+            }
         } catch (final Exception e) {
             logger.warn("A connection monitoring exception occurs.", e);
         }
@@ -15,30 +15,35 @@
  */
 package org.codelibs.fess.crawler.client.http;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.net.ConnectException;
 import java.net.MalformedURLException;
 import java.net.NoRouteToHostException;
 import java.net.SocketException;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.apache.commons.lang3.SystemUtils;
 import org.apache.http.Header;
@@ -54,17 +59,22 @@ import org.apache.http.client.CookieStore;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.DeflateInputStream;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.utils.DateUtils;
 import org.apache.http.config.Lookup;
+import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.DnsResolver;
 import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.routing.HttpRoutePlanner;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
 import org.apache.http.conn.util.PublicSuffixMatcher;
@@ -78,20 +88,23 @@ import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.impl.cookie.DefaultCookieSpecProvider;
 import org.apache.http.impl.cookie.DefaultCookieSpecProvider.CompatibilityLevel;
 import org.apache.http.impl.cookie.IgnoreSpecProvider;
 import org.apache.http.impl.cookie.NetscapeDraftSpecProvider;
 import org.apache.http.impl.cookie.RFC6265CookieSpecProvider;
 import org.apache.http.message.BasicHeader;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.util.EntityUtils;
+import org.brotli.dec.BrotliInputStream;
 import org.codelibs.core.beans.BeanDesc;
 import org.codelibs.core.beans.PropertyDesc;
 import org.codelibs.core.beans.factory.BeanDescFactory;
 import org.codelibs.core.io.CloseableUtil;
-import org.codelibs.core.io.CopyUtil;
 import org.codelibs.core.lang.StringUtil;
 import org.codelibs.core.misc.Pair;
 import org.codelibs.core.timer.TimeoutManager;
@@ -102,6 +115,7 @@ import org.codelibs.fess.crawler.client.AbstractCrawlerClient;
 import org.codelibs.fess.crawler.client.AccessTimeoutTarget;
 import org.codelibs.fess.crawler.client.http.conn.IdnDnsResolver;
 import org.codelibs.fess.crawler.client.http.form.FormScheme;
+import org.codelibs.fess.crawler.entity.RequestData;
 import org.codelibs.fess.crawler.entity.ResponseData;
 import org.codelibs.fess.crawler.entity.RobotsTxt;
 import org.codelibs.fess.crawler.exception.CrawlerSystemException;
@@ -111,6 +125,7 @@ import org.codelibs.fess.crawler.helper.ContentLengthHelper;
 import org.codelibs.fess.crawler.helper.MimeTypeHelper;
 import org.codelibs.fess.crawler.helper.RobotsTxtHelper;
 import org.codelibs.fess.crawler.util.CrawlingParameterUtil;
+import org.codelibs.fess.crawler.util.HeadCaptureInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -134,6 +149,8 @@ public class HcHttpClient extends AbstractCrawlerClient {
 
     public static final String USER_AGENT_PROPERTY = "userAgent";
 
+    public static final String ACCEPT_ENCODING_PROPERTY = "acceptEncoding";
+
     public static final String ROBOTS_TXT_ENABLED_PROPERTY = "robotsTxtEnabled";
 
     public static final String BASIC_AUTHENTICATIONS_PROPERTY = "basicAuthentications";
@@ -161,7 +178,7 @@ public class HcHttpClient extends AbstractCrawlerClient {
 
     protected volatile CloseableHttpClient httpClient;
 
-    private final List<Header> requestHeaderList = new ArrayList<>();
+    protected final List<Header> requestHeaderList = new ArrayList<>();
 
     private final Map<String, Object> httpClientPropertyMap = new HashMap<>();
 
@@ -169,9 +186,15 @@ public class HcHttpClient extends AbstractCrawlerClient {
 
     protected Integer connectionTimeout;
 
-    protected Integer maxTotalConnections;
+    protected Integer maxTotalConnections = 200;
+
+    protected Integer maxConnectionsPerRoute = 20;
+
+    protected final Map<String, Integer> maxConnectionsPerHostMap = new HashMap<>();
 
-    protected Integer maxConnectionsPerRoute;
+    protected long connectionTimeToLive = 5 * 60 * 1000L; // 5min
+
+    protected int validateAfterInactivity = 2000; // msec
 
     protected Integer soTimeout;
 
@@ -191,6 +214,10 @@ public class HcHttpClient extends AbstractCrawlerClient {
 
     protected String defaultMimeType = APPLICATION_OCTET_STREAM;
 
+    protected int responseBodyHeadSize = 8 * 1024;
+
+    protected String acceptEncoding = "gzip, deflate, br";
+
     protected CookieStore cookieStore = new BasicCookieStore();
 
     protected HttpClientConnectionManager clientConnectionManager;
@@ -277,6 +304,10 @@ public class HcHttpClient extends AbstractCrawlerClient {
             httpClientBuilder.setUserAgent(userAgent);
         }
 
+        // content coding is negotiated and decoded by processHttpMethod
+        acceptEncoding = getInitParameter(ACCEPT_ENCODING_PROPERTY, acceptEncoding, String.class);
+        httpClientBuilder.disableContentCompression();
+
         final HttpRoutePlanner planner = buildRoutePlanner();
         if (planner != null) {
             httpClientBuilder.setRoutePlanner(planner);
@@ -340,6 +371,18 @@ public class HcHttpClient extends AbstractCrawlerClient {
             httpClientBuilder.setSSLSocketFactory(sslSocketFactory);
         }
 
+        // connection pool
+        if (clientConnectionManager == null) {
+            clientConnectionManager = buildConnectionManager(sslSocketFactory);
+        } else {
+            // an injected manager is shut down by its owner
+            httpClientBuilder.setConnectionManagerShared(true);
+            if (clientConnectionManager instanceof PoolingHttpClientConnectionManager) {
+                // other pool settings belong to the owner
+                applyMaxConnectionsPerHost((PoolingHttpClientConnectionManager) clientConnectionManager);
+            }
+        }
+
         connectionMonitorTask = TimeoutManager.getInstance().addTimeoutTarget(
                 new HcConnectionMonitorTarget(clientConnectionManager, idleConnectionTimeout), connectionCheckInterval, true);
 
@@ -385,6 +428,87 @@ public class HcHttpClient extends AbstractCrawlerClient {
         httpClient = closeableHttpClient;
     }
 
+    /**
+     * Creates a connection pool of this client.
+     * It's used if clientConnectionManager is not injected.
+     *
+     * @param sslSocketFactory a socket factory for https, or null to use the default one
+     * @return a pooling connection manager
+     */
+    protected HttpClientConnectionManager buildConnectionManager(final LayeredConnectionSocketFactory sslSocketFactory) {
+        final Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory> create()//
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())//
+                .register("https", sslSocketFactory != null ? sslSocketFactory : SSLConnectionSocketFactory.getSocketFactory())//
+                .build();
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry, null,
+                null, dnsResolver, connectionTimeToLive, TimeUnit.MILLISECONDS);
+        if (maxTotalConnections != null) {
+            connectionManager.setMaxTotal(maxTotalConnections);
+        }
+        if (maxConnectionsPerRoute != null) {
+            connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        }
+        connectionManager.setValidateAfterInactivity(validateAfterInactivity);
+        applyMaxConnectionsPerHost(connectionManager);
+        return connectionManager;
+    }
+
+    /**
+     * Sets per-host limits to a given connection pool.
+     * It's applied to an injected pool too.
+     *
+     * @param connectionManager a pooling connection manager
+     */
+    protected void applyMaxConnectionsPerHost(final PoolingHttpClientConnectionManager connectionManager) {
+        for (final Map.Entry<String, Integer> entry : maxConnectionsPerHostMap.entrySet()) {
+            connectionManager.setMaxPerRoute(createHttpRoute(entry.getKey()), entry.getValue());
+        }
+    }
+
+    /**
+     * Creates a direct route to a given host.
+     *
+     * @param hostUrl a host url, such as https://example.com:8443
+     * @return a route
+     */
+    protected static HttpRoute createHttpRoute(final String hostUrl) {
+        final HttpHost host = HttpHost.create(hostUrl);
+        final boolean secure = "https".equalsIgnoreCase(host.getSchemeName());
+        if (host.getPort() > 0) {
+            return new HttpRoute(host, null, secure);
+        }
+        return new HttpRoute(new HttpHost(host.getHostName(), secure ? 443 : 80, host.getSchemeName()), null, secure);
+    }
+
+    /**
+     * Returns statistics of the whole connection pool.
+     *
+     * @return leased, pending and available connections, or null if the connection manager is not a pool
+     */
+    public PoolStats getTotalPoolStats() {
+        if (clientConnectionManager instanceof ConnPoolControl) {
+            return ((ConnPoolControl<?>) clientConnectionManager).getTotalStats();
+        }
+        return null;
+    }
+
+    /**
+     * Returns statistics of the connection pool for each route.
+     *
+     * @return leased, pending and available connections for each route
+     */
+    public Map<HttpRoute, PoolStats> getRoutePoolStats() {
+        if (clientConnectionManager instanceof PoolingHttpClientConnectionManager) {
+            final PoolingHttpClientConnectionManager connectionManager = (PoolingHttpClientConnectionManager) clientConnectionManager;
+            final Map<HttpRoute, PoolStats> statsMap = new LinkedHashMap<>();
+            for (final HttpRoute route : connectionManager.getRoutes()) {
+                statsMap.put(route, connectionManager.getStats(route));
+            }
+            return statsMap;
+        }
+        return Collections.emptyMap();
+    }
+
     protected LayeredConnectionSocketFactory buildSSLSocketFactory() {
         if (sslSocketFactory != null) {
             return sslSocketFactory;
@@ -443,6 +567,28 @@ public class HcHttpClient extends AbstractCrawlerClient {
         }
     }
 
+    /**
+     * Processes robots.txt of a given url. A failure is logged and ignored.
+     *
+     * @param url URL
+     */
+    protected void checkRobotsTxt(final String url) {
+        try {
+            processRobotsTxt(url);
+        } catch (final CrawlingAccessException e) {
+            if (logger.isInfoEnabled()) {
+                final StringBuilder buf = new StringBuilder(100);
+                buf.append(e.getMessage());
+                if (e.getCause() != null) {
+                    buf.append(e.getCause().getMessage());
+                }
+                logger.info(buf.toString());
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("Crawling Access Exception at {}", url, e);
+            }
+        }
+    }
+
     protected void processRobotsTxt(final String url) {
         if (StringUtil.isBlank(url)) {
             throw new CrawlerSystemException("url is null or empty.");
@@ -522,7 +668,12 @@ public class HcHttpClient extends AbstractCrawlerClient {
                         }
 
                         final RobotsTxt.Directive directive = robotsTxt.getMatchedDirective(userAgent);
-                        if (directive != null) {
+                        if (directive != null && directive.getCrawlDelay() > 0 && crawlerContext.getIntervalController() != null) {
+                            crawlerContext.getIntervalController().addCrawlDelay(hostUrl, directive.getCrawlDelay() * 1000L);
+                        }
+                        if (directive != null && !crawlerContext.getUrlFilter().addRobotsTxtRules(hostUrl,
+                                useRobotsTxtDisallows ? directive.getDisallows() : new String[0],
+                                useRobotsTxtAllows ? directive.getAllows() : new String[0])) {
                             if (useRobotsTxtDisallows) {
                                 for (String urlPattern : directive.getDisallows()) {
                                     if (StringUtil.isNotBlank(urlPattern)) {
@@ -565,6 +716,51 @@ public class HcHttpClient extends AbstractCrawlerClient {
         return newPath.replace(".*.*", ".*");
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.client.AbstractCrawlerClient#execute(org.codelibs.fess.crawler.entity.RequestData)
+     */
+    @Override
+    public ResponseData execute(final RequestData request) {
+        if (request.getMethod() == RequestData.Method.GET && request.isConditional()) {
+            final String url = request.getUrl();
+            HttpUriRequest httpGet;
+            try {
+                httpGet = new HttpGet(url);
+            } catch (final IllegalArgumentException e) {
+                throw new CrawlingAccessException("The url may not be valid: " + url, e);
+            }
+            for (final Header header : createConditionalHeaders(request)) {
+                httpGet.addHeader(header);
+            }
+            return doHttpMethod(url, httpGet);
+        }
+        return super.execute(request);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.client.CrawlerClient#isConditionalRequestSupported()
+     */
+    @Override
+    public boolean isConditionalRequestSupported() {
+        return true;
+    }
+
+    protected List<Header> createConditionalHeaders(final RequestData request) {
+        final List<Header> headerList = new ArrayList<>(2);
+        if (StringUtil.isNotBlank(request.getIfNoneMatch())) {
+            headerList.add(new BasicHeader("If-None-Match", request.getIfNoneMatch()));
+        }
+        final Long ifModifiedSince = request.getIfModifiedSince();
+        if (ifModifiedSince != null && ifModifiedSince.longValue() > 0) {
+            headerList.add(new BasicHeader("If-Modified-Since", DateUtils.formatDate(new Date(ifModifiedSince.longValue()))));
+        }
+        return headerList;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -627,25 +823,15 @@ public class HcHttpClient extends AbstractCrawlerClient {
     }
 
     protected ResponseData processHttpMethod(final String url, final HttpUriRequest httpRequest) {
-        try {
-            processRobotsTxt(url);
-        } catch (final CrawlingAccessException e) {
-            if (logger.isInfoEnabled()) {
-                final StringBuilder buf = new StringBuilder(100);
-                buf.append(e.getMessage());
-                if (e.getCause() != null) {
-                    buf.append(e.getCause().getMessage());
-                }
-                logger.info(buf.toString());
-            } else if (logger.isDebugEnabled()) {
-                logger.debug("Crawling Access Exception at {}", url, e);
-            }
-        }
+        checkRobotsTxt(url);
 
         // request header
         for (final Header header : requestHeaderList) {
             httpRequest.addHeader(header);
         }
+        if (StringUtil.isNotBlank(acceptEncoding) && !httpRequest.containsHeader("Accept-Encoding")) {
+            httpRequest.addHeader("Accept-Encoding", acceptEncoding);
+        }
 
         ResponseData responseData = new ResponseData();
         HttpEntity httpEntity = null;
@@ -674,9 +860,11 @@ public class HcHttpClient extends AbstractCrawlerClient {
             }
 
             String contentType = null;
+            String charSet = null;
             final Header contentTypeHeader = response.getFirstHeader("Content-Type");
             if (contentTypeHeader != null) {
                 contentType = contentTypeHeader.getValue();
+                charSet = parseCharSet(contentType);
                 final int idx = contentType.indexOf(';');
                 if (idx > 0) {
                     contentType = contentType.substring(0, idx);
@@ -687,49 +875,45 @@ public class HcHttpClient extends AbstractCrawlerClient {
             }
 
             long contentLength = 0;
-            String contentEncoding = Constants.UTF_8;
+            boolean decoded = false;
             if (httpEntity == null) {
                 responseData.setResponseBody(new byte[0]);
                 if (contentType == null) {
                     contentType = defaultMimeType;
                 }
             } else {
-                final InputStream responseBodyStream = httpEntity.getContent();
+                final Header contentEncodingHeader = httpEntity.getContentEncoding();
+                if (contentEncodingHeader != null && StringUtil.isNotBlank(contentEncodingHeader.getValue())) {
+                    responseData.setContentEncoding(contentEncodingHeader.getValue().trim().toLowerCase(Locale.ROOT));
+                }
+                final CountingInputStream encodedBodyStream = new CountingInputStream(httpEntity.getContent());
                 try (final DeferredFileOutputStream dfos = new DeferredFileOutputStream((int) maxCachedContentSize, "crawler-HcHttpClient-",
                         ".out", SystemUtils.getJavaIoTmpDir())) {
-                    CopyUtil.copy(responseBodyStream, dfos);
+                    final InputStream decodedBodyStream = createDecodingInputStream(encodedBodyStream, responseData.getContentEncoding());
+                    decoded = decodedBodyStream != encodedBodyStream;
+                    // a body is sniffed while it is stored, so it is not read again
+                    final HeadCaptureInputStream responseBodyStream =
+                            new HeadCaptureInputStream(decodedBodyStream, dfos, responseBodyHeadSize);
+                    if (contentType == null) {
+                        try {
+                            contentType = mimeTypeHelper.getContentType(responseBodyStream, url);
+                        } catch (final Exception e) {
+                            logger.debug("Failed to detect mime-type.", e);
+                            contentType = defaultMimeType;
+                        }
+                    }
+                    // stop reading a decoded body when it is too large
+                    contentLength = responseBodyStream.drain(getMaxLength(contentType));
+                    responseData.setEncodedContentLength(encodedBodyStream.getByteCount());
                     dfos.flush();
 
                     if (dfos.isInMemory()) {
                         responseData.setResponseBody(dfos.getData());
-                        contentLength = dfos.getData().length;
-                        if (contentType == null) {
-                            try (InputStream is = new ByteArrayInputStream(dfos.getData())) {
-                                contentType = mimeTypeHelper.getContentType(is, url);
-                            } catch (final Exception e) {
-                                logger.debug("Failed to detect mime-type.", e);
-                                contentType = defaultMimeType;
-                            }
-                        }
                     } else {
-                        final File outputFile = dfos.getFile();
-                        responseData.setResponseBody(outputFile, true);
-                        contentLength = outputFile.length();
-                        if (contentType == null) {
-                            try (InputStream is = new FileInputStream(outputFile)) {
-                                contentType = mimeTypeHelper.getContentType(is, url);
-                            } catch (final Exception e) {
-                                logger.debug("Failed to detect mime-type.", e);
-                                contentType = defaultMimeType;
-                            }
-                        }
+                        responseData.setResponseBody(dfos.getFile(), true);
+                        responseData.setResponseBodyHead(responseBodyStream.getHead());
                     }
                 }
-
-                final Header contentEncodingHeader = httpEntity.getContentEncoding();
-                if (contentEncodingHeader != null) {
-                    contentEncoding = contentEncodingHeader.getValue();
-                }
             }
 
             // check file size
@@ -742,7 +926,7 @@ public class HcHttpClient extends AbstractCrawlerClient {
             }
 
             responseData.setUrl(url);
-            responseData.setCharSet(contentEncoding);
+            responseData.setCharSet(charSet == null ? Constants.UTF_8 : charSet);
             if (httpRequest instanceof HttpHead) {
                 responseData.setMethod(Constants.HEAD_METHOD);
             } else {
@@ -754,7 +938,8 @@ public class HcHttpClient extends AbstractCrawlerClient {
             }
             responseData.setMimeType(contentType);
             final Header contentLengthHeader = response.getFirstHeader("Content-Length");
-            if (contentLengthHeader == null) {
+            if (contentLengthHeader == null || decoded) {
+                // Content-Length is the size of an encoded body
                 responseData.setContentLength(contentLength);
             } else {
                 final String value = contentLengthHeader.getValue();
@@ -775,6 +960,13 @@ public class HcHttpClient extends AbstractCrawlerClient {
                     }
                 }
             }
+            final Header etagHeader = response.getFirstHeader("ETag");
+            if (etagHeader != null && StringUtil.isNotBlank(etagHeader.getValue())) {
+                responseData.setEtag(etagHeader.getValue());
+            }
+            if (httpStatusCode == Constants.NOT_MODIFIED_STATUS_CODE) {
+                responseData.setStatus(Constants.NOT_MODIFIED_STATUS);
+            }
 
             return responseData;
         } catch (final UnknownHostException e) {
@@ -808,7 +1000,114 @@ public class HcHttpClient extends AbstractCrawlerClient {
         httpRequest.abort();
     }
 
+    /**
+     * Returns a stream which decodes a body encoded by given content codings.
+     * A given stream is returned as is if a content coding is not supported.
+     *
+     * @param inputStream an encoded body
+     * @param contentEncoding a value of Content-Encoding header
+     * @return a decoded body
+     * @throws IOException if an I/O error occurs
+     */
+    protected InputStream createDecodingInputStream(final InputStream inputStream, final String contentEncoding) throws IOException {
+        if (StringUtil.isBlank(contentEncoding)) {
+            return inputStream;
+        }
+
+        final String[] contentCodings = contentEncoding.split(",");
+        for (final String contentCoding : contentCodings) {
+            if (!isSupportedContentCoding(contentCoding.trim())) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Unsupported content coding: {}", contentEncoding);
+                }
+                return inputStream;
+            }
+        }
+
+        final PushbackInputStream in = new PushbackInputStream(inputStream, 1);
+        final int b = in.read();
+        if (b == -1) {
+            // empty body
+            return in;
+        }
+        in.unread(b);
+
+        // codings are listed in the order in which they were applied
+        InputStream decodedStream = in;
+        for (int i = contentCodings.length - 1; i >= 0; i--) {
+            switch (contentCodings[i].trim()) {
+            case "gzip":
+            case "x-gzip":
+                decodedStream = new GZIPInputStream(decodedStream, 8192);
+                break;
+            case "deflate":
+                decodedStream = new DeflateInputStream(decodedStream);
+                break;
+            case "br":
+                decodedStream = new BrotliInputStream(decodedStream);
+                break;
+            default:
+                break;
+            }
+        }
+        return decodedStream;
+    }
+
+    protected boolean isSupportedContentCoding(final String contentCoding) {
+        switch (contentCoding) {
+        case "gzip":
+        case "x-gzip":
+        case "deflate":
+        case "br":
+        case "identity":
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    protected long getMaxLength(final String contentType) {
+        long maxLength = Long.MAX_VALUE;
+        if (contentLengthHelper != null) {
+            maxLength = contentLengthHelper.getMaxLength(contentType);
+        }
+        if (maxContentLength != null) {
+            maxLength = Math.min(maxLength, maxContentLength.longValue());
+        }
+        return maxLength;
+    }
+
+    /**
+     * Returns a charset parameter of Content-Type header.
+     *
+     * @param contentType a value of Content-Type header
+     * @return a supported charset, or null
+     */
+    protected String parseCharSet(final String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        for (final String param : contentType.split(";")) {
+            final int idx = param.indexOf('=');
+            if (idx > 0 && "charset".equalsIgnoreCase(param.substring(0, idx).trim())) {
+                final String value = param.substring(idx + 1).trim().replace("\"", StringUtil.EMPTY);
+                try {
+                    if (StringUtil.isNotBlank(value) && Charset.isSupported(value)) {
+                        return value;
+                    }
+                } catch (final IllegalCharsetNameException e) {
+                    // ignore
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+
     protected boolean isRedirectHttpStatus(final int httpStatusCode) {
+        if (httpStatusCode == Constants.NOT_MODIFIED_STATUS_CODE) {
+            return false;
+        }
         return redirectHttpStatusPattern.matcher(Integer.toString(httpStatusCode)).matches();
     }
 
@@ -866,6 +1165,39 @@ public class HcHttpClient extends AbstractCrawlerClient {
         this.maxConnectionsPerRoute = maxConnectionsPerRoute;
     }
 
+    /**
+     * Sets the maximum number of connections to a given host.
+     * Other hosts use maxConnectionsPerRoute.
+     *
+     * @param hostUrl a host url, such as https://example.com
+     * @param maxConnections the maximum number of connections
+     */
+    public void addMaxConnectionsPerHost(final String hostUrl, final int maxConnections) {
+        if (StringUtil.isNotBlank(hostUrl)) {
+            maxConnectionsPerHostMap.put(hostUrl, maxConnections);
+        }
+    }
+
+    /**
+     * Sets time to live of pooled connections.
+     * It's used if clientConnectionManager is not injected.
+     *
+     * @param connectionTimeToLive time in milliseconds
+     */
+    public void setConnectionTimeToLive(final long connectionTimeToLive) {
+        this.connectionTimeToLive = connectionTimeToLive;
+    }
+
+    /**
+     * Sets inactivity time after which pooled connections are validated before reuse.
+     * It's used if clientConnectionManager is not injected.
+     *
+     * @param validateAfterInactivity time in milliseconds
+     */
+    public void setValidateAfterInactivity(final int validateAfterInactivity) {
+        this.validateAfterInactivity = validateAfterInactivity;
+    }
+
     public void setSoTimeout(final Integer soTimeout) {
         this.soTimeout = soTimeout;
     }
@@ -898,6 +1230,10 @@ public class HcHttpClient extends AbstractCrawlerClient {
         this.defaultMimeType = defaultMimeType;
     }
 
+    public void setResponseBodyHeadSize(final int responseBodyHeadSize) {
+        this.responseBodyHeadSize = responseBodyHeadSize;
+    }
+
     public void setCookieStore(final CookieStore cookieStore) {
         this.cookieStore = cookieStore;
     }
@@ -0,0 +1,635 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.client.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Authenticator;
+import java.net.ConnectException;
+import java.net.CookieHandler;
+import java.net.CookieManager;
+import java.net.HttpCookie;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.commons.lang3.SystemUtils;
+import org.apache.http.Header;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.cookie.Cookie;
+import org.codelibs.core.io.CloseableUtil;
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.core.lang.SystemUtil;
+import org.codelibs.fess.crawler.Constants;
+import org.codelibs.fess.crawler.client.AsyncCrawlerClient;
+import org.codelibs.fess.crawler.client.http.form.FormScheme;
+import org.codelibs.fess.crawler.entity.RequestData;
+import org.codelibs.fess.crawler.entity.ResponseData;
+import org.codelibs.fess.crawler.exception.CrawlerSystemException;
+import org.codelibs.fess.crawler.exception.CrawlingAccessException;
+import org.codelibs.fess.crawler.exception.MaxLengthExceededException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JdkHttpClient sends GET and HEAD requests with the non-blocking HTTP client of JDK,
+ * so that many requests are in flight without a thread for each of them.
+ * The number of requests in flight is bounded by maxInFlightRequests for all threads
+ * which share this client, and executeAsync blocks the caller while the limit is reached.
+ * CrawlerThread also bounds requests of each thread by maxInFlightRequestsPerThread,
+ * so the effective limit is the smaller of the two totals.
+ * robots.txt is processed by HcHttpClient. Basic authentication is answered from
+ * the credentials of HcHttpClient, and cookies in its cookie store are copied at init.
+ * Form authentication is not supported.
+ *
+ * @author shinsuke
+ *
+ */
+public class JdkHttpClient extends HcHttpClient implements AsyncCrawlerClient {
+
+    public static final String MAX_IN_FLIGHT_REQUESTS_PROPERTY = "maxInFlightRequests";
+
+    private static final Logger logger = LoggerFactory.getLogger(JdkHttpClient.class);
+
+    protected volatile HttpClient asyncHttpClient;
+
+    protected Semaphore inFlightSemaphore;
+
+    protected int maxInFlightRequests = 1000;
+
+    protected Version httpVersion = Version.HTTP_1_1;
+
+    protected Executor executor;
+
+    @Override
+    public synchronized void init() {
+        if (asyncHttpClient != null) {
+            return;
+        }
+
+        for (final Authentication authentication : getInitParameter(BASIC_AUTHENTICATIONS_PROPERTY, new Authentication[0],
+                Authentication[].class)) {
+            if (authentication.getAuthScheme() instanceof FormScheme) {
+                throw new CrawlerSystemException("Form authentication is not supported by " + getClass().getSimpleName());
+            }
+        }
+
+        super.init();
+
+        final HttpClient.Builder builder = HttpClient.newBuilder().version(httpVersion);
+        builder.followRedirects(getInitParameter(REDIRECTS_ENABLED, redirectsEnabled, Boolean.class) ? Redirect.NORMAL : Redirect.NEVER);
+
+        final Integer connectionTimeoutParam = getInitParameter(CONNECTION_TIMEOUT_PROPERTY, connectionTimeout, Integer.class);
+        if (connectionTimeoutParam != null) {
+            builder.connectTimeout(Duration.ofMillis(connectionTimeoutParam));
+        }
+
+        // proxy
+        final String proxyHost = getInitParameter(PROXY_HOST_PROPERTY, this.proxyHost, String.class);
+        final Integer proxyPort = getInitParameter(PROXY_PORT_PROPERTY, this.proxyPort, Integer.class);
+        if (proxyHost != null && proxyPort != null) {
+            builder.proxy(ProxySelector.of(new InetSocketAddress(proxyHost, proxyPort)));
+        }
+
+        // authentication
+        if (credentialsProvider != null) {
+            builder.authenticator(buildAuthenticator());
+        }
+
+        // cookie
+        if (cookieStore != null) {
+            builder.cookieHandler(buildCookieHandler());
+        }
+
+        if (executor != null) {
+            builder.executor(executor);
+        }
+
+        inFlightSemaphore = new Semaphore(getInitParameter(MAX_IN_FLIGHT_REQUESTS_PROPERTY, maxInFlightRequests, Integer.class));
+        asyncHttpClient = builder.build();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.client.AbstractCrawlerClient#execute(org.codelibs.fess.crawler.entity.RequestData)
+     */
+    @Override
+    public ResponseData execute(final RequestData request) {
+        try {
+            return executeAsync(request).join();
+        } catch (final CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new CrawlerSystemException("Failed to access " + request.getUrl(), cause);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.client.AsyncCrawlerClient#executeAsync(org.codelibs.fess.crawler.entity.RequestData)
+     */
+    @Override
+    public CompletableFuture<ResponseData> executeAsync(final RequestData request) {
+        if (asyncHttpClient == null) {
+            init();
+        }
+
+        final String url = request.getUrl();
+        final String method;
+        switch (request.getMethod()) {
+        case GET:
+            method = Constants.GET_METHOD;
+            break;
+        case HEAD:
+            method = Constants.HEAD_METHOD;
+            break;
+        default:
+            return CompletableFuture.failedFuture(new CrawlerSystemException(request.getMethod() + " method is not supported."));
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Accessing {}", url);
+        }
+
+        checkRobotsTxt(url);
+
+        final HttpRequest httpRequest;
+        try {
+            httpRequest = buildHttpRequest(request, method);
+        } catch (final IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new CrawlingAccessException("The url may not be valid: " + url, e));
+        }
+
+        try {
+            inFlightSemaphore.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(new CrawlingAccessException("Interrupted while waiting for " + url, e));
+        }
+
+        final ResponseBodyHandler bodyHandler = new ResponseBodyHandler(url, Constants.HEAD_METHOD.equals(method));
+        CompletableFuture<HttpResponse<DeferredFileOutputStream>> exchangeFuture;
+        try {
+            exchangeFuture = asyncHttpClient.sendAsync(httpRequest, bodyHandler);
+        } catch (final Exception e) {
+            exchangeFuture = CompletableFuture.failedFuture(e);
+        }
+        final CompletableFuture<HttpResponse<DeferredFileOutputStream>> exchange = exchangeFuture;
+        // the permit is held until the exchange ends, not until the access timeout
+        CompletableFuture<ResponseData> future = exchange.whenComplete((response, t) -> inFlightSemaphore.release())
+                .thenApply(response -> createResponseData(url, method, response));
+        if (accessTimeout != null) {
+            future = future.orTimeout(accessTimeout.longValue(), TimeUnit.SECONDS);
+        }
+        return future.handle((responseData, t) -> {
+            if (t != null) {
+                // stop the exchange if it's still running
+                bodyHandler.abort();
+                exchange.cancel(true);
+                throw toCrawlerException(url, t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+            }
+            return responseData;
+        });
+    }
+
+    /**
+     * Creates an authenticator which looks up credentials in credentialsProvider.
+     * JDK HTTP client supports Basic authentication only.
+     *
+     * @return an authenticator
+     */
+    protected Authenticator buildAuthenticator() {
+        return new Authenticator() {
+            @Override
+            protected PasswordAuthentication getPasswordAuthentication() {
+                final AuthScope authScope =
+                        new AuthScope(getRequestingHost(), getRequestingPort(), getRequestingPrompt(), getRequestingScheme());
+                final Credentials credentials = credentialsProvider.getCredentials(authScope);
+                if (credentials == null || credentials.getUserPrincipal() == null) {
+                    return null;
+                }
+                final String password = credentials.getPassword();
+                return new PasswordAuthentication(credentials.getUserPrincipal().getName(),
+                        password != null ? password.toCharArray() : new char[0]);
+            }
+        };
+    }
+
+    /**
+     * Creates a cookie handler which starts with cookies in cookieStore.
+     * Cookies received by this client are not stored to cookieStore.
+     *
+     * @return a cookie handler
+     */
+    protected CookieHandler buildCookieHandler() {
+        final CookieManager cookieManager = new CookieManager();
+        final long now = SystemUtil.currentTimeMillis();
+        for (final Cookie cookie : cookieStore.getCookies()) {
+            final HttpCookie httpCookie = new HttpCookie(cookie.getName(), cookie.getValue());
+            httpCookie.setDomain(cookie.getDomain());
+            httpCookie.setPath(cookie.getPath() != null ? cookie.getPath() : "/");
+            httpCookie.setSecure(cookie.isSecure());
+            httpCookie.setVersion(0);
+            if (cookie.getExpiryDate() != null) {
+                httpCookie.setMaxAge(Math.max(0L, (cookie.getExpiryDate().getTime() - now) / 1000L));
+            }
+            final String domain = cookie.getDomain();
+            // a host without a dot, such as localhost, matches by uri only
+            final URI uri = StringUtil.isNotBlank(domain) ? URI.create("http://" + (domain.startsWith(".") ? domain.substring(1) : domain))
+                    : null;
+            cookieManager.getCookieStore().add(uri, httpCookie);
+        }
+        return cookieManager;
+    }
+
+    protected HttpRequest buildHttpRequest(final RequestData request, final String method) {
+        final HttpRequest.Builder builder =
+                HttpRequest.newBuilder(URI.create(request.getUrl())).method(method, HttpRequest.BodyPublishers.noBody());
+        final Integer soTimeoutParam = getInitParameter(SO_TIMEOUT_PROPERTY, soTimeout, Integer.class);
+        if (soTimeoutParam != null) {
+            builder.timeout(Duration.ofMillis(soTimeoutParam));
+        }
+        if (StringUtil.isNotBlank(userAgent)) {
+            builder.setHeader("User-Agent", userAgent);
+        }
+        for (final Header header : requestHeaderList) {
+            try {
+                builder.header(header.getName(), header.getValue());
+            } catch (final IllegalArgumentException e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("{} header is not allowed.", header.getName(), e);
+                }
+            }
+        }
+        if (Constants.GET_METHOD.equals(method)) {
+            for (final Header header : createConditionalHeaders(request)) {
+                builder.setHeader(header.getName(), header.getValue());
+            }
+        }
+        return builder.build();
+    }
+
+    protected ResponseData createResponseData(final String url, final String method,
+            final HttpResponse<DeferredFileOutputStream> response) {
+        final int httpStatusCode = response.statusCode();
+        // redirect
+        if (isRedirectHttpStatus(httpStatusCode)) {
+            final String location = response.headers().firstValue("location").orElse(null);
+            if (location == null) {
+                logger.warn("Invalid redirect location at " + url);
+            } else {
+                final ResponseData responseData = new ResponseData();
+                try {
+                    responseData.setRedirectLocation(location.startsWith("/") ? buildRedirectLocation(url, location) : location);
+                } catch (final IOException e) {
+                    throw new CrawlingAccessException("Invalid redirect location at " + url, e);
+                }
+                return responseData;
+            }
+        }
+
+        final ResponseData responseData = new ResponseData();
+        try {
+            String contentType = getContentType(response);
+
+            long contentLength = 0;
+            final DeferredFileOutputStream dfos = response.body();
+            if (dfos == null) {
+                responseData.setResponseBody(new byte[0]);
+                if (contentType == null) {
+                    contentType = defaultMimeType;
+                }
+            } else if (dfos.isInMemory()) {
+                responseData.setResponseBody(dfos.getData());
+                contentLength = dfos.getData().length;
+                if (contentType == null) {
+                    try (InputStream is = new ByteArrayInputStream(dfos.getData())) {
+                        contentType = mimeTypeHelper.getContentType(is, url);
+                    } catch (final Exception e) {
+                        logger.debug("Failed to detect mime-type.", e);
+                        contentType = defaultMimeType;
+                    }
+                }
+            } else {
+                final File outputFile = dfos.getFile();
+                responseData.setResponseBody(outputFile, true);
+                contentLength = outputFile.length();
+                if (contentType == null) {
+                    try (InputStream is = new FileInputStream(outputFile)) {
+                        contentType = mimeTypeHelper.getContentType(is, url);
+                    } catch (final Exception e) {
+                        logger.debug("Failed to detect mime-type.", e);
+                        contentType = defaultMimeType;
+                    }
+                }
+            }
+
+            // check file size
+            if (contentLengthHelper != null) {
+                final long maxLength = contentLengthHelper.getMaxLength(contentType);
+                if (contentLength > maxLength) {
+                    throw new MaxLengthExceededException(
+                            "The content length (" + contentLength + " byte) is over " + maxLength + " byte. The url is " + url);
+                }
+            }
+
+            responseData.setUrl(url);
+            final String charSet = parseCharSet(response.headers().firstValue("Content-Type").orElse(null));
+            responseData.setCharSet(charSet == null ? Constants.UTF_8 : charSet);
+            // a body is stored as received because Accept-Encoding is not sent by this client
+            response.headers().firstValue("Content-Encoding")
+                    .ifPresent(value -> responseData.setContentEncoding(value.trim().toLowerCase(Locale.ROOT)));
+            responseData.setEncodedContentLength(contentLength);
+            responseData.setMethod(method);
+            responseData.setHttpStatusCode(httpStatusCode);
+            for (final Map.Entry<String, List<String>> entry : response.headers().map().entrySet()) {
+                for (final String value : entry.getValue()) {
+                    responseData.addMetaData(entry.getKey(), value);
+                }
+            }
+            responseData.setMimeType(contentType);
+            final String contentLengthValue = response.headers().firstValue("Content-Length").orElse(null);
+            if (contentLengthValue == null) {
+                responseData.setContentLength(contentLength);
+            } else {
+                try {
+                    responseData.setContentLength(Long.parseLong(contentLengthValue));
+                } catch (final Exception e) {
+                    responseData.setContentLength(contentLength);
+                }
+            }
+            checkMaxContentLength(responseData);
+            final String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+            if (StringUtil.isNotBlank(lastModified)) {
+                final Date d = parseLastModified(lastModified);
+                if (d != null) {
+                    responseData.setLastModified(d);
+                }
+            }
+            final String etag = response.headers().firstValue("ETag").orElse(null);
+            if (StringUtil.isNotBlank(etag)) {
+                responseData.setEtag(etag);
+            }
+            if (httpStatusCode == Constants.NOT_MODIFIED_STATUS_CODE) {
+                responseData.setStatus(Constants.NOT_MODIFIED_STATUS);
+            }
+
+            return responseData;
+        } catch (final RuntimeException e) {
+            CloseableUtil.closeQuietly(responseData);
+            throw e;
+        }
+    }
+
+    protected String getContentType(final HttpResponse<?> response) {
+        String contentType = response.headers().firstValue("Content-Type").orElse(null);
+        if (contentType != null) {
+            final int idx = contentType.indexOf(';');
+            if (idx > 0) {
+                contentType = contentType.substring(0, idx);
+                if (APPLICATION_OCTET_STREAM.equals(contentType)) {
+                    contentType = null;
+                }
+            }
+        }
+        return contentType;
+    }
+
+    protected CrawlerSystemException toCrawlerException(final String url, final Throwable t) {
+        if (t instanceof CrawlerSystemException) {
+            return (CrawlerSystemException) t;
+        } else if (t instanceof TimeoutException) {
+            return new CrawlingAccessException("Access timeout: " + url, t);
+        } else if (t instanceof HttpConnectTimeoutException || t instanceof ConnectException) {
+            return new CrawlingAccessException("Connection time out(" + t.getMessage() + "): " + url, t);
+        } else if (t instanceof HttpTimeoutException) {
+            return new CrawlingAccessException("Read time out(" + t.getMessage() + "): " + url, t);
+        } else if (t instanceof IOException) {
+            return new CrawlingAccessException("I/O exception(" + t.getMessage() + "): " + url, t);
+        }
+        return new CrawlerSystemException("Failed to access " + url, t);
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        asyncHttpClient = null;
+    }
+
+    /**
+     * Returns the number of requests which can be sent without waiting.
+     *
+     * @return available permits of the in-flight window
+     */
+    public int getAvailableRequests() {
+        final Semaphore semaphore = inFlightSemaphore;
+        return semaphore != null ? semaphore.availablePermits() : maxInFlightRequests;
+    }
+
+    /**
+     * Sets the maximum number of requests in flight for all threads which share this client.
+     * executeAsync blocks the calling thread while the limit is reached.
+     *
+     * @param maxInFlightRequests the maximum number of requests in flight
+     */
+    public void setMaxInFlightRequests(final int maxInFlightRequests) {
+        this.maxInFlightRequests = maxInFlightRequests;
+    }
+
+    public void setHttpVersion(final Version httpVersion) {
+        this.httpVersion = httpVersion;
+    }
+
+    public void setExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a body subscriber after response headers are received.
+     * A body of HEAD or redirect is discarded.
+     */
+    protected class ResponseBodyHandler implements HttpResponse.BodyHandler<DeferredFileOutputStream> {
+        private final String url;
+
+        private final boolean discard;
+
+        private volatile ResponseBodySubscriber subscriber;
+
+        private volatile boolean aborted;
+
+        protected ResponseBodyHandler(final String url, final boolean discard) {
+            this.url = url;
+            this.discard = discard;
+        }
+
+        @Override
+        public BodySubscriber<DeferredFileOutputStream> apply(final HttpResponse.ResponseInfo responseInfo) {
+            if (discard || isRedirectHttpStatus(responseInfo.statusCode())) {
+                return BodySubscribers.replacing(null);
+            }
+            final ResponseBodySubscriber bodySubscriber = new ResponseBodySubscriber(url);
+            subscriber = bodySubscriber;
+            if (aborted) {
+                bodySubscriber.abort();
+            }
+            return bodySubscriber;
+        }
+
+        protected void abort() {
+            aborted = true;
+            final ResponseBodySubscriber bodySubscriber = subscriber;
+            if (bodySubscriber != null) {
+                bodySubscriber.abort();
+            }
+        }
+    }
+
+    /**
+     * Writes a response body to memory, or to a temporary file if it's large.
+     */
+    protected class ResponseBodySubscriber implements BodySubscriber<DeferredFileOutputStream> {
+        private final CompletableFuture<DeferredFileOutputStream> result = new CompletableFuture<>();
+
+        private final DeferredFileOutputStream dfos;
+
+        private final String url;
+
+        private Flow.Subscription subscription;
+
+        private volatile boolean aborted;
+
+        protected ResponseBodySubscriber(final String url) {
+            this.url = url;
+            dfos = new DeferredFileOutputStream((int) maxCachedContentSize, "crawler-JdkHttpClient-", ".out",
+                    SystemUtils.getJavaIoTmpDir());
+        }
+
+        @Override
+        public CompletionStage<DeferredFileOutputStream> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (aborted) {
+                subscription.cancel();
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(final List<ByteBuffer> items) {
+            if (aborted) {
+                return;
+            }
+            try {
+                for (final ByteBuffer buffer : items) {
+                    if (buffer.hasArray()) {
+                        dfos.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                    } else {
+                        final byte[] bytes = new byte[buffer.remaining()];
+                        buffer.get(bytes);
+                        dfos.write(bytes);
+                    }
+                }
+                if (maxContentLength != null && dfos.getByteCount() > maxContentLength.longValue()) {
+                    throw new MaxLengthExceededException(
+                            "The content length (" + dfos.getByteCount() + " byte) is over " + maxContentLength + " byte. The url is " + url);
+                }
+            } catch (final Exception e) {
+                subscription.cancel();
+                onError(e);
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            cleanup();
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            try {
+                dfos.close();
+            } catch (final IOException e) {
+                onError(e);
+                return;
+            }
+            if (aborted) {
+                cleanup();
+            } else {
+                result.complete(dfos);
+            }
+        }
+
+        protected void abort() {
+            aborted = true;
+            final Flow.Subscription s = subscription;
+            if (s != null) {
+                s.cancel();
+            }
+            cleanup();
+            // a cancelled subscription is not completed by the client
+            result.cancel(false);
+        }
+
+        protected void cleanup() {
+            CloseableUtil.closeQuietly(dfos);
+            final File file = dfos.getFile();
+            if (!dfos.isInMemory() && file != null && file.exists() && !file.delete()) {
+                logger.warn("Failed to delete " + file.getAbsolutePath());
+            }
+        }
+    }
+}
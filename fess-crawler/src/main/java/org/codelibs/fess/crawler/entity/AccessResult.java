@@ -77,4 +77,8 @@ public interface AccessResult<IDTYPE> {
     Long getLastModified();
 
     void setLastModified(Long lastModified);
+
+    String getEtag();
+
+    void setEtag(String etag);
 }
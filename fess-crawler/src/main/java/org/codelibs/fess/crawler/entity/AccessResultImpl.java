@@ -49,6 +49,8 @@ public class AccessResultImpl<IDTYPE> implements AccessResult<IDTYPE> {
 
     protected Long lastModified;
 
+    protected String etag;
+
     protected AccessResultData<IDTYPE> accessResultData;
 
     @Override
@@ -330,12 +332,22 @@ public class AccessResultImpl<IDTYPE> implements AccessResult<IDTYPE> {
         this.lastModified = lastModified;
     }
 
+    @Override
+    public String getEtag() {
+        return etag;
+    }
+
+    @Override
+    public void setEtag(final String etag) {
+        this.etag = etag;
+    }
+
     @Override
     public String toString() {
         return "AccessResultImpl [id=" + id + ", sessionId=" + sessionId + ", ruleId=" + ruleId + ", url=" + url + ", parentUrl="
                 + parentUrl + ", status=" + status + ", httpStatusCode=" + httpStatusCode + ", method=" + method + ", mimeType=" + mimeType
                 + ", createTime=" + createTime + ", executionTime=" + executionTime + ", contentLength=" + contentLength + ", lastModified="
-                + lastModified + ", accessResultData=" + accessResultData + "]";
+                + lastModified + ", etag=" + etag + ", accessResultData=" + accessResultData + "]";
     }
 
 }
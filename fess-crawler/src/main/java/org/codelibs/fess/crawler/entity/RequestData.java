@@ -32,6 +32,10 @@ public class RequestData {
 
     private String metaData;
 
+    private String ifNoneMatch;
+
+    private Long ifModifiedSince;
+
     public Method getMethod() {
         return method;
     }
@@ -68,6 +72,29 @@ public class RequestData {
         this.metaData = metaData;
     }
 
+    public String getIfNoneMatch() {
+        return ifNoneMatch;
+    }
+
+    public void setIfNoneMatch(final String ifNoneMatch) {
+        this.ifNoneMatch = ifNoneMatch;
+    }
+
+    public Long getIfModifiedSince() {
+        return ifModifiedSince;
+    }
+
+    public void setIfModifiedSince(final Long ifModifiedSince) {
+        this.ifModifiedSince = ifModifiedSince;
+    }
+
+    /**
+     * @return true if a client may return 304 instead of a content
+     */
+    public boolean isConditional() {
+        return ifNoneMatch != null || ifModifiedSince != null && ifModifiedSince.longValue() > 0;
+    }
+
     @Override
     public String toString() {
         return "RequestData [method=" + method + ", url=" + url + "]";
@@ -45,6 +45,10 @@ public class ResponseData implements Closeable {
 
     private long contentLength;
 
+    private String contentEncoding;
+
+    private long encodedContentLength;
+
     private String mimeType;
 
     private String method;
@@ -59,6 +63,8 @@ public class ResponseData implements Closeable {
 
     private Date lastModified;
 
+    private String etag;
+
     private String redirectLocation;
 
     private int status = Constants.OK_STATUS;
@@ -71,6 +77,8 @@ public class ResponseData implements Closeable {
 
     private File responseBodyFile;
 
+    private byte[] responseBodyHead;
+
     private boolean isTemporaryFile;
 
     private boolean noFollow = false;
@@ -100,12 +108,32 @@ public class ResponseData implements Closeable {
         return null;
     }
 
+    /**
+     * Returns a stream which contains at least the first given bytes of the body.
+     * The captured head is used if it is long enough, so a body in a file is not opened.
+     *
+     * @param size the number of bytes needed
+     * @return the head or whole body
+     */
+    public InputStream getResponseBodyHead(final int size) {
+        if (responseBodyHead != null && responseBodyHead.length >= size) {
+            return new ByteArrayInputStream(responseBodyHead, 0, size);
+        }
+        return getResponseBody();
+    }
+
+    public void setResponseBodyHead(final byte[] responseBodyHead) {
+        this.responseBodyHead = responseBodyHead;
+    }
+
     public void setResponseBody(final byte[] responseBody) {
         this.responseBodyBytes = responseBody;
+        this.responseBodyHead = null;
     }
 
     public void setResponseBody(final File responseBody, final boolean isTemporary) {
         this.responseBodyFile = responseBody;
+        this.responseBodyHead = null;
         this.isTemporaryFile = isTemporary;
     }
 
@@ -125,6 +153,28 @@ public class ResponseData implements Closeable {
         this.contentLength = contentLength;
     }
 
+    /**
+     * @return a content coding of the response, such as gzip
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public void setContentEncoding(final String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * @return the number of bytes received before the content is decoded
+     */
+    public long getEncodedContentLength() {
+        return encodedContentLength;
+    }
+
+    public void setEncodedContentLength(final long encodedContentLength) {
+        this.encodedContentLength = encodedContentLength;
+    }
+
     public String getMimeType() {
         return mimeType;
     }
@@ -197,6 +247,14 @@ public class ResponseData implements Closeable {
         this.lastModified = lastModified;
     }
 
+    public String getEtag() {
+        return etag;
+    }
+
+    public void setEtag(final String etag) {
+        this.etag = etag;
+    }
+
     public int getStatus() {
         return status;
     }
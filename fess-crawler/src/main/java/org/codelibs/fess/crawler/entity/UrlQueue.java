@@ -57,6 +57,14 @@ public interface UrlQueue<IDTYPE> {
 
     void setLastModified(Long lastModified);
 
+    String getEtag();
+
+    void setEtag(String etag);
+
+    String getMimeType();
+
+    void setMimeType(String mimeType);
+
     Long getCreateTime();
 
     void setCreateTime(Long createTime);
@@ -38,6 +38,10 @@ public class UrlQueueImpl<IDTYPE> implements UrlQueue<IDTYPE> {
 
     protected Long lastModified;
 
+    protected String etag;
+
+    protected String mimeType;
+
     protected Long createTime;
 
     /*
@@ -220,9 +224,50 @@ public class UrlQueueImpl<IDTYPE> implements UrlQueue<IDTYPE> {
         this.lastModified = lastModified;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.entity.UrlQueue#getEtag()
+     */
+    @Override
+    public String getEtag() {
+        return etag;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.entity.UrlQueue#setEtag(java.lang.String)
+     */
+    @Override
+    public void setEtag(final String etag) {
+        this.etag = etag;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.entity.UrlQueue#getMimeType()
+     */
+    @Override
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.entity.UrlQueue#setMimeType(java.lang.String)
+     */
+    @Override
+    public void setMimeType(final String mimeType) {
+        this.mimeType = mimeType;
+    }
+
     @Override
     public String toString() {
         return "UrlQueueImpl [id=" + id + ", sessionId=" + sessionId + ", method=" + method + ", url=" + url + ", encoding=" + encoding
-                + ", parentUrl=" + parentUrl + ", depth=" + depth + ", lastModified=" + lastModified + ", createTime=" + createTime + "]";
+                + ", parentUrl=" + parentUrl + ", depth=" + depth + ", lastModified=" + lastModified + ", etag=" + etag + ", mimeType="
+                + mimeType + ", createTime=" + createTime + "]";
     }
 }
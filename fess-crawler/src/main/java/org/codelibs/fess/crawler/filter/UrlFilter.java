@@ -52,6 +52,22 @@ public interface UrlFilter {
      */
     void addExclude(String urlPattern);
 
+    /**
+     * Add Disallow/Allow paths of robots.txt for a host.
+     * A filter which does not keep them by itself returns false,
+     * and then they are added as exclude/include patterns.
+     * Rules kept by a filter are held in memory only, so a filter should return false
+     * when its url patterns are shared by other crawlers or resumed sessions.
+     *
+     * @param hostUrl URL of a host, such as http://example.com
+     * @param disallows Disallow paths in robots.txt
+     * @param allows Allow paths in robots.txt
+     * @return true if the paths are kept by this filter
+     */
+    default boolean addRobotsTxtRules(final String hostUrl, final String[] disallows, final String[] allows) {
+        return false;
+    }
+
     /**
      * Process an url when it's added as a seed url.
      *
@@ -18,7 +18,6 @@ package org.codelibs.fess.crawler.filter.impl;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -28,6 +27,8 @@ import org.codelibs.fess.crawler.container.CrawlerContainer;
 import org.codelibs.fess.crawler.exception.CrawlerSystemException;
 import org.codelibs.fess.crawler.filter.UrlFilter;
 import org.codelibs.fess.crawler.service.UrlFilterService;
+import org.codelibs.fess.crawler.util.RobotsTxtRules;
+import org.codelibs.fess.crawler.util.UrlPatternMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,6 +57,12 @@ public class UrlFilterImpl implements UrlFilter {
 
     protected UrlFilterService urlFilterService;
 
+    protected volatile UrlPatternMatcher includeMatcher;
+
+    protected volatile UrlPatternMatcher excludeMatcher;
+
+    protected RobotsTxtRules robotsTxtRules = new RobotsTxtRules();
+
     /*
      * (non-Javadoc)
      *
@@ -109,6 +116,7 @@ public class UrlFilterImpl implements UrlFilter {
     public void clear() {
         cachedIncludeSet.clear();
         cachedExcludeSet.clear();
+        robotsTxtRules.clear();
         if (sessionId != null) {
             getUrlFilterService().delete(sessionId);
         }
@@ -147,38 +155,59 @@ public class UrlFilterImpl implements UrlFilter {
      */
     @Override
     public boolean match(final String url) {
-        final List<Pattern> includeList = getUrlFilterService().getIncludeUrlPatternList(sessionId);
-        final List<Pattern> excludeList = getUrlFilterService().getExcludeUrlPatternList(sessionId);
+        final RobotsTxtRules.Result robotsTxtResult = robotsTxtRules.match(url);
+        if (robotsTxtResult == RobotsTxtRules.Result.DISALLOWED) {
+            return false;
+        }
 
-        if (!includeList.isEmpty()) {
-            boolean match = false;
-            for (final Pattern pattern : includeList) {
-                final Matcher matcher = pattern.matcher(url);
-                if (matcher.matches()) {
-                    match = true;
-                }
-            }
-            if (!match) {
-                return false;
-            }
+        final UrlPatternMatcher includeMatcher = getIncludeMatcher();
+        if (robotsTxtResult != RobotsTxtRules.Result.ALLOWED && !includeMatcher.isEmpty() && !includeMatcher.matches(url)) {
+            return false;
         }
 
-        if (!excludeList.isEmpty()) {
-            boolean match = false;
-            for (final Pattern pattern : excludeList) {
-                final Matcher matcher = pattern.matcher(url);
-                if (matcher.matches()) {
-                    match = true;
-                }
-            }
-            if (match) {
-                return false;
-            }
+        final UrlPatternMatcher excludeMatcher = getExcludeMatcher();
+        if (!excludeMatcher.isEmpty() && excludeMatcher.matches(url)) {
+            return false;
         }
 
         return true;
     }
 
+    protected UrlPatternMatcher getIncludeMatcher() {
+        final List<Pattern> includeList = getUrlFilterService().getIncludeUrlPatternList(sessionId);
+        UrlPatternMatcher matcher = includeMatcher;
+        if (matcher == null || !matcher.isCompiledFrom(includeList)) {
+            matcher = new UrlPatternMatcher(includeList);
+            includeMatcher = matcher;
+        }
+        return matcher;
+    }
+
+    protected UrlPatternMatcher getExcludeMatcher() {
+        final List<Pattern> excludeList = getUrlFilterService().getExcludeUrlPatternList(sessionId);
+        UrlPatternMatcher matcher = excludeMatcher;
+        if (matcher == null || !matcher.isCompiledFrom(excludeList)) {
+            matcher = new UrlPatternMatcher(excludeList);
+            excludeMatcher = matcher;
+        }
+        return matcher;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.filter.UrlFilter#addRobotsTxtRules(java.lang.String, java.lang.String[], java.lang.String[])
+     */
+    @Override
+    public boolean addRobotsTxtRules(final String hostUrl, final String[] disallows, final String[] allows) {
+        if (getUrlFilterService().isPersistent()) {
+            // rules in this filter are lost on other crawlers and resumed sessions, so they are stored as url patterns
+            return false;
+        }
+        robotsTxtRules.addRules(hostUrl, disallows, allows);
+        return true;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -218,6 +247,14 @@ public class UrlFilterImpl implements UrlFilter {
         this.excludeFilteringPattern = excludeFilteringPattern;
     }
 
+    public RobotsTxtRules getRobotsTxtRules() {
+        return robotsTxtRules;
+    }
+
+    public void setRobotsTxtRules(final RobotsTxtRules robotsTxtRules) {
+        this.robotsTxtRules = robotsTxtRules;
+    }
+
     public UrlFilterService getUrlFilterService() {
         if (urlFilterService == null) {
             urlFilterService = crawlerContainer.getComponent("urlFilterService");
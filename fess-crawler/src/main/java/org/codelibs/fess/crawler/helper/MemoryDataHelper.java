@@ -16,122 +16,145 @@
 package org.codelibs.fess.crawler.helper;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Pattern;
 
 import org.codelibs.fess.crawler.entity.AccessResultImpl;
 import org.codelibs.fess.crawler.entity.UrlQueueImpl;
 
 /**
+ * MemoryDataHelper keeps queues, results and URL patterns for each session on memory.
+ * All structures are concurrent ones, so sessions do not contend with each other.
+ *
  * @author shinsuke
  *
  */
 public class MemoryDataHelper {
-    protected volatile Map<String, Queue<UrlQueueImpl<Long>>> urlQueueMap = new HashMap<>();
+    protected volatile Map<String, Queue<UrlQueueImpl<Long>>> urlQueueMap = new ConcurrentHashMap<>();
+
+    protected volatile Map<String, Set<String>> urlQueueUrlSetMap = new ConcurrentHashMap<>();
 
-    protected volatile Map<String, Map<String, AccessResultImpl<Long>>> sessionMap = new HashMap<>();
+    protected volatile Map<String, Set<String>> polledUrlSetMap = new ConcurrentHashMap<>();
 
-    protected volatile Map<String, List<Pattern>> includeUrlPatternMap = new HashMap<>();
+    protected volatile Map<String, Map<String, AccessResultImpl<Long>>> sessionMap = new ConcurrentHashMap<>();
 
-    protected volatile Map<String, List<Pattern>> excludeUrlPatternMap = new HashMap<>();
+    protected volatile Map<String, List<Pattern>> includeUrlPatternMap = new ConcurrentHashMap<>();
+
+    protected volatile Map<String, List<Pattern>> excludeUrlPatternMap = new ConcurrentHashMap<>();
 
     public void clear() {
         urlQueueMap.clear();
+        urlQueueUrlSetMap.clear();
+        polledUrlSetMap.clear();
         sessionMap.clear();
     }
 
-    public synchronized Queue<UrlQueueImpl<Long>> getUrlQueueList(final String sessionId) {
-        Queue<UrlQueueImpl<Long>> urlQueueList = urlQueueMap.get(sessionId);
-        if (urlQueueList == null) {
-            urlQueueList = new LinkedList<>();
-            urlQueueMap.put(sessionId, urlQueueList);
-        }
-        return urlQueueList;
+    public Queue<UrlQueueImpl<Long>> getUrlQueueList(final String sessionId) {
+        return urlQueueMap.computeIfAbsent(sessionId, k -> new ConcurrentLinkedQueue<>());
     }
 
-    public synchronized void addUrlQueueList(final String sessionId, final Queue<UrlQueueImpl<Long>> urlQueueList) {
+    public void addUrlQueueList(final String sessionId, final Queue<UrlQueueImpl<Long>> urlQueueList) {
         final Queue<UrlQueueImpl<Long>> uqList = getUrlQueueList(sessionId);
         uqList.addAll(urlQueueList);
-        urlQueueMap.put(sessionId, uqList);
+        final Set<String> urlSet = getUrlQueueUrlSet(sessionId);
+        for (final UrlQueueImpl<Long> urlQueue : urlQueueList) {
+            if (urlQueue.getUrl() != null) {
+                urlSet.add(urlQueue.getUrl());
+            }
+        }
     }
 
-    public synchronized void removeUrlQueueList(final String sessionId) {
+    public void removeUrlQueueList(final String sessionId) {
         urlQueueMap.remove(sessionId);
+        urlQueueUrlSetMap.remove(sessionId);
+        polledUrlSetMap.remove(sessionId);
     }
 
-    public synchronized void clearUrlQueueList() {
+    public void clearUrlQueueList() {
         urlQueueMap.clear();
+        urlQueueUrlSetMap.clear();
+        polledUrlSetMap.clear();
     }
 
-    public synchronized Map<String, AccessResultImpl<Long>> getAccessResultMap(final String sessionId) {
-        Map<String, AccessResultImpl<Long>> arMap = sessionMap.get(sessionId);
-        if (arMap == null) {
-            arMap = new HashMap<>();
-            sessionMap.put(sessionId, arMap);
-        }
-        return arMap;
+    /**
+     * Returns a set of URLs which are in a queue for the session.
+     * The set is kept with the queue to check a duplicated URL in O(1).
+     *
+     * @param sessionId a session id
+     * @return a set of queued URLs
+     */
+    public Set<String> getUrlQueueUrlSet(final String sessionId) {
+        return urlQueueUrlSetMap.computeIfAbsent(sessionId, k -> ConcurrentHashMap.newKeySet());
     }
 
-    public synchronized void deleteAccessResultMap(final String sessionId) {
+    /**
+     * Returns a set of URLs which are polled in a batch, but not released yet.
+     * They wait for crawler threads, so they are still regarded as queued URLs.
+     *
+     * @param sessionId a session id
+     * @return a set of polled URLs
+     */
+    public Set<String> getPolledUrlSet(final String sessionId) {
+        return polledUrlSetMap.computeIfAbsent(sessionId, k -> ConcurrentHashMap.newKeySet());
+    }
+
+    public Map<String, AccessResultImpl<Long>> getAccessResultMap(final String sessionId) {
+        return sessionMap.computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>());
+    }
+
+    public void deleteAccessResultMap(final String sessionId) {
         sessionMap.remove(sessionId);
     }
 
-    public synchronized void deleteAllAccessResultMap() {
+    public void deleteAllAccessResultMap() {
         sessionMap.clear();
     }
 
-    public synchronized List<AccessResultImpl<Long>> getAccessResultList(final String url) {
+    public List<AccessResultImpl<Long>> getAccessResultList(final String url) {
         final List<AccessResultImpl<Long>> acList = new ArrayList<>();
-        for (final Map.Entry<String, Map<String, AccessResultImpl<Long>>> entry : sessionMap.entrySet()) {
-            if (entry.getValue() != null) {
-                final AccessResultImpl<Long> ar = entry.getValue().get(url);
-                if (ar != null) {
-                    acList.add(ar);
-                }
+        if (url == null) {
+            return acList;
+        }
+        for (final Map<String, AccessResultImpl<Long>> arMap : sessionMap.values()) {
+            final AccessResultImpl<Long> ar = arMap.get(url);
+            if (ar != null) {
+                acList.add(ar);
             }
         }
         // TODO order
         return acList;
     }
 
-    public synchronized void addIncludeUrlPattern(final String sessionId, final String url) {
+    public void addIncludeUrlPattern(final String sessionId, final String url) {
         final List<Pattern> patternList = getIncludeUrlPatternList(sessionId);
         patternList.add(Pattern.compile(url));
     }
 
     public List<Pattern> getIncludeUrlPatternList(final String sessionId) {
-        List<Pattern> patternList = includeUrlPatternMap.get(sessionId);
-        if (patternList == null) {
-            patternList = new ArrayList<>();
-            includeUrlPatternMap.put(sessionId, patternList);
-        }
-        return patternList;
+        return includeUrlPatternMap.computeIfAbsent(sessionId, k -> new CopyOnWriteArrayList<>());
     }
 
-    public synchronized void addExcludeUrlPattern(final String sessionId, final String url) {
+    public void addExcludeUrlPattern(final String sessionId, final String url) {
         final List<Pattern> patternList = getExcludeUrlPatternList(sessionId);
         patternList.add(Pattern.compile(url));
     }
 
     public List<Pattern> getExcludeUrlPatternList(final String sessionId) {
-        List<Pattern> patternList = excludeUrlPatternMap.get(sessionId);
-        if (patternList == null) {
-            patternList = new ArrayList<>();
-            excludeUrlPatternMap.put(sessionId, patternList);
-        }
-        return patternList;
+        return excludeUrlPatternMap.computeIfAbsent(sessionId, k -> new CopyOnWriteArrayList<>());
     }
 
-    public synchronized void clearUrlPattern(final String sessionId) {
+    public void clearUrlPattern(final String sessionId) {
         includeUrlPatternMap.remove(sessionId);
         excludeUrlPatternMap.remove(sessionId);
     }
 
-    public synchronized void clearUrlPattern() {
+    public void clearUrlPattern() {
         includeUrlPatternMap.clear();
         excludeUrlPatternMap.clear();
     }
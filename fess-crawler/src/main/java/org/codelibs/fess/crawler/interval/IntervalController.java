@@ -25,4 +25,26 @@ public interface IntervalController {
     int WAIT_NEW_URL = 8;
 
     void delay(int type);
+
+    /**
+     * Sets a crawl delay for a host, such as Crawl-delay in robots.txt.
+     * The default implementation ignores it.
+     *
+     * @param hostUrl a host url, such as http://example.com:8080
+     * @param delayMillis a delay in milliseconds
+     */
+    default void addCrawlDelay(final String hostUrl, final long delayMillis) {
+        // NOP
+    }
+
+    /**
+     * Checks if a given url can be accessed without waiting for PRE_PROCESSING.
+     * The default implementation always returns true.
+     *
+     * @param url URL
+     * @return true if the url is ready to be accessed
+     */
+    default boolean isReady(final String url) {
+        return true;
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.interval.impl;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codelibs.core.lang.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CrawlDelayIntervalController waits for each host with Crawl-delay of
+ * robots.txt. A host without Crawl-delay uses delayMillisBeforeProcessing.
+ *
+ * @author shinsuke
+ *
+ */
+public class CrawlDelayIntervalController extends HostIntervalController {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrawlDelayIntervalController.class);
+
+    protected final Map<String, Long> crawlDelayMap = new ConcurrentHashMap<>();
+
+    protected long maxCrawlDelayMillis = 60000L;
+
+    public CrawlDelayIntervalController() {
+        super();
+    }
+
+    public CrawlDelayIntervalController(final Map<String, Long> params) {
+        super(params);
+
+        final Long millis = params.get("maxCrawlDelayMillis");
+        if (millis != null) {
+            maxCrawlDelayMillis = millis;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.interval.IntervalController#addCrawlDelay(java.lang.String, long)
+     */
+    @Override
+    public void addCrawlDelay(final String hostUrl, final long delayMillis) {
+        if (StringUtil.isBlank(hostUrl)) {
+            return;
+        }
+
+        try {
+            final String host = new URL(hostUrl).getHost();
+            if (StringUtil.isBlank(host)) {
+                return;
+            }
+            if (delayMillis > 0) {
+                crawlDelayMap.put(host, Math.min(delayMillis, maxCrawlDelayMillis));
+            } else {
+                crawlDelayMap.remove(host);
+            }
+        } catch (final Exception e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to set Crawl-delay for " + hostUrl, e);
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.interval.impl.HostIntervalController#
+     * getDelayMillisBeforeProcessing(java.lang.String)
+     */
+    @Override
+    protected long getDelayMillisBeforeProcessing(final String host) {
+        final Long crawlDelay = crawlDelayMap.get(host);
+        if (crawlDelay != null && crawlDelay > delayMillisBeforeProcessing) {
+            return crawlDelay;
+        }
+        return delayMillisBeforeProcessing;
+    }
+
+    public long getMaxCrawlDelayMillis() {
+        return maxCrawlDelayMillis;
+    }
+
+    public void setMaxCrawlDelayMillis(final long maxCrawlDelayMillis) {
+        this.maxCrawlDelayMillis = maxCrawlDelayMillis;
+    }
+}
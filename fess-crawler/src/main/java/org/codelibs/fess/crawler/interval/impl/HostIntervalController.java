@@ -68,10 +68,11 @@ public class HostIntervalController extends DefaultIntervalController {
             if (lastTime == null) {
                 return;
             }
+            final long delayMillis = getDelayMillisBeforeProcessing(host);
             synchronized (lastTime) {
                 while (true) {
                     final long currentTime = SystemUtil.currentTimeMillis();
-                    final long delayTime = lastTime.get() + delayMillisBeforeProcessing - currentTime;
+                    final long delayTime = lastTime.get() + delayMillis - currentTime;
                     if (delayTime <= 0) {
                         lastTime.set(currentTime);
                         break;
@@ -84,4 +85,34 @@ public class HostIntervalController extends DefaultIntervalController {
         }
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.interval.IntervalController#isReady(java.lang.String)
+     */
+    @Override
+    public boolean isReady(final String url) {
+        if (StringUtil.isBlank(url) || url.startsWith("file:")) {
+            return true;
+        }
+
+        try {
+            final String host = new URL(url).getHost();
+            if (host == null) {
+                return true;
+            }
+            final AtomicLong lastTime = lastTimes.get(host);
+            if (lastTime == null) {
+                return true;
+            }
+            return lastTime.get() + getDelayMillisBeforeProcessing(host) <= SystemUtil.currentTimeMillis();
+        } catch (final Exception e) {
+            return true;
+        }
+    }
+
+    protected long getDelayMillisBeforeProcessing(final String host) {
+        return delayMillisBeforeProcessing;
+    }
+
 }
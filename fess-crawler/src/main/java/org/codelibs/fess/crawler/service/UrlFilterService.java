@@ -40,4 +40,15 @@ public interface UrlFilterService {
 
     List<Pattern> getExcludeUrlPatternList(String sessionId);
 
+    /**
+     * Checks if url filters are stored out of this process, such as in Elasticsearch.
+     * Such filters are shared by crawlers on the same session and survive a resumed session.
+     * The default implementation returns false.
+     *
+     * @return true if url filters are persistent
+     */
+    default boolean isPersistent() {
+        return false;
+    }
+
 }
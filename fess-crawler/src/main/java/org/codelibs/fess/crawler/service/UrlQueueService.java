@@ -15,7 +15,9 @@
  */
 package org.codelibs.fess.crawler.service;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 
 import org.codelibs.fess.crawler.entity.UrlQueue;
 
@@ -39,6 +41,64 @@ public interface UrlQueueService<QUEUE extends UrlQueue<?>> {
 
     QUEUE poll(String sessionId);
 
+    /**
+     * Retrieves and removes a queued url which satisfies a given condition.
+     * If no url satisfies it, null is returned even if the queue is not empty.
+     * The default implementation ignores the condition.
+     *
+     * @param sessionId session id
+     * @param preferred a condition for preferred urls
+     * @return a queued url, or null if no url satisfies the condition
+     */
+    default QUEUE poll(final String sessionId, final Predicate<QUEUE> preferred) {
+        return poll(sessionId);
+    }
+
+    /**
+     * Retrieves and removes queued urls at most a given size.
+     * Polled urls are regarded as queued ones until they are released.
+     * The default implementation calls poll(sessionId) for each url.
+     *
+     * @param sessionId session id
+     * @param size the max number of urls
+     * @return a list of queued urls, or an empty list if the queue is empty
+     */
+    default List<QUEUE> pollBatch(final String sessionId, final int size) {
+        final List<QUEUE> urlQueueList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final QUEUE urlQueue = poll(sessionId);
+            if (urlQueue == null) {
+                break;
+            }
+            urlQueueList.add(urlQueue);
+        }
+        return urlQueueList;
+    }
+
+    /**
+     * Releases a url polled by pollBatch after it is processed or restored.
+     * Until then, the url is not queued again even if it waits in a crawler thread.
+     * The default implementation does nothing.
+     *
+     * @param sessionId session id
+     * @param urlQueue a polled url
+     */
+    default void release(final String sessionId, final QUEUE urlQueue) {
+        // nothing
+    }
+
+    /**
+     * Checks if urls remain in the queue even though poll returns null.
+     * It happens when the queue keeps intervals for hosts.
+     * The default implementation returns false.
+     *
+     * @param sessionId session id
+     * @return true if urls wait for their hosts
+     */
+    default boolean hasWaitingUrls(final String sessionId) {
+        return false;
+    }
+
     void saveSession(String sessionId);
 
     boolean visited(QUEUE urlQueue);
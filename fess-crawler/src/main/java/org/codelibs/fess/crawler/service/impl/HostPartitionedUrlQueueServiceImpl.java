@@ -0,0 +1,394 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.codelibs.core.lang.SystemUtil;
+import org.codelibs.fess.crawler.entity.AccessResultImpl;
+import org.codelibs.fess.crawler.entity.UrlQueueImpl;
+import org.codelibs.fess.crawler.util.RobotsTxtRules;
+
+/**
+ * HostPartitionedUrlQueueServiceImpl keeps one queue for each host and
+ * polls urls from hosts in round-robin order, so that a host with many urls
+ * does not block urls of other hosts. Hosts are ordered by the time when
+ * the next url of the host can be polled, which is hostIntervalMillis after
+ * the last poll. If no host is ready, poll returns null while urls remain.
+ *
+ * @author shinsuke
+ *
+ */
+public class HostPartitionedUrlQueueServiceImpl extends UrlQueueServiceImpl {
+
+    protected final Map<String, Frontier> frontierMap = new ConcurrentHashMap<>();
+
+    protected long hostIntervalMillis = 0L;
+
+    protected int maxPreferredHostScanSize = 10;
+
+    protected Frontier getFrontier(final String sessionId) {
+        return frontierMap.computeIfAbsent(sessionId, k -> new Frontier());
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.codelibs.fess.crawler.service.UrlQueueService#updateSessionId(java.lang.String
+     * , java.lang.String)
+     */
+    @Override
+    public void updateSessionId(final String oldSessionId, final String newSessionId) {
+        // not MT-safe
+        final Frontier oldFrontier = frontierMap.remove(oldSessionId);
+        if (oldFrontier != null) {
+            final Set<String> urlSet = dataHelper.getUrlQueueUrlSet(newSessionId);
+            final Frontier frontier = getFrontier(newSessionId);
+            for (final UrlQueueImpl<Long> urlQueue : oldFrontier.pollAll()) {
+                if (urlQueue.getUrl() != null) {
+                    urlSet.add(urlQueue.getUrl());
+                }
+                frontier.add(urlQueue);
+            }
+        }
+        super.updateSessionId(oldSessionId, newSessionId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.codelibs.fess.crawler.service.UrlQueueService#insert(org.codelibs.fess.crawler.entity
+     * .UrlQueue)
+     */
+    @Override
+    public void insert(final UrlQueueImpl<Long> urlQueue) {
+        if (urlQueue.getUrl() != null) {
+            dataHelper.getUrlQueueUrlSet(urlQueue.getSessionId()).add(urlQueue.getUrl());
+        }
+        getFrontier(urlQueue.getSessionId()).add(urlQueue);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.service.UrlQueueService#delete(java.lang.String)
+     */
+    @Override
+    public void delete(final String sessionId) {
+        frontierMap.remove(sessionId);
+        super.delete(sessionId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.service.UrlQueueService#deleteAll()
+     */
+    @Override
+    public void deleteAll() {
+        frontierMap.clear();
+        super.deleteAll();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.service.UrlQueueService#offerAll(java.lang.String,
+     * java.util.List)
+     */
+    @Override
+    public void offerAll(final String sessionId, final List<UrlQueueImpl<Long>> newUrlQueueList) {
+        final Set<String> urlSet = dataHelper.getUrlQueueUrlSet(sessionId);
+        final List<UrlQueueImpl<Long>> targetList = new ArrayList<>();
+        for (final UrlQueueImpl<Long> urlQueue : newUrlQueueList) {
+            // add to the set first so that only one thread can queue the url
+            if (isNewUrl(urlQueue, urlSet) && urlSet.add(urlQueue.getUrl())) {
+                targetList.add(urlQueue);
+            }
+        }
+        if (!targetList.isEmpty()) {
+            getFrontier(sessionId).addAll(targetList);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.service.UrlQueueService#poll(java.lang.String)
+     */
+    @Override
+    public UrlQueueImpl<Long> poll(final String sessionId) {
+        return poll(sessionId, null);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.service.UrlQueueService#poll(java.lang.String,
+     * java.util.function.Predicate)
+     */
+    @Override
+    public UrlQueueImpl<Long> poll(final String sessionId, final Predicate<UrlQueueImpl<Long>> preferred) {
+        final Frontier frontier = frontierMap.get(sessionId);
+        if (frontier == null) {
+            return null;
+        }
+        final UrlQueueImpl<Long> urlQueue = frontier.poll(SystemUtil.currentTimeMillis(), preferred);
+        if (urlQueue != null && urlQueue.getUrl() != null) {
+            dataHelper.getUrlQueueUrlSet(sessionId).remove(urlQueue.getUrl());
+        }
+        return urlQueue;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.service.UrlQueueService#pollBatch(java.lang.String, int)
+     */
+    @Override
+    public List<UrlQueueImpl<Long>> pollBatch(final String sessionId, final int size) {
+        final Frontier frontier = frontierMap.get(sessionId);
+        if (frontier == null) {
+            return new ArrayList<>();
+        }
+        final List<UrlQueueImpl<Long>> urlQueueList = frontier.pollBatch(SystemUtil.currentTimeMillis(), size);
+        final Set<String> urlSet = dataHelper.getUrlQueueUrlSet(sessionId);
+        final Set<String> polledUrlSet = dataHelper.getPolledUrlSet(sessionId);
+        for (final UrlQueueImpl<Long> urlQueue : urlQueueList) {
+            if (urlQueue.getUrl() != null) {
+                // keep the url as a queued one until it's released
+                polledUrlSet.add(urlQueue.getUrl());
+                urlSet.remove(urlQueue.getUrl());
+            }
+        }
+        return urlQueueList;
+    }
+
+    @Override
+    public void generateUrlQueues(final String previousSessionId, final String sessionId) {
+        final Set<String> urlSet = dataHelper.getUrlQueueUrlSet(sessionId);
+        final Frontier frontier = getFrontier(sessionId);
+        final Map<String, AccessResultImpl<Long>> arMap = dataHelper.getAccessResultMap(previousSessionId);
+        for (final Map.Entry<String, AccessResultImpl<Long>> entry : arMap.entrySet()) {
+            final UrlQueueImpl<Long> urlQueue = new UrlQueueImpl<>();
+            urlQueue.setSessionId(sessionId);
+            urlQueue.setMethod(entry.getValue().getMethod());
+            urlQueue.setUrl(entry.getValue().getUrl());
+            urlQueue.setParentUrl(entry.getValue().getParentUrl());
+            urlQueue.setDepth(0);
+            urlQueue.setLastModified(entry.getValue().getLastModified());
+            urlQueue.setEtag(entry.getValue().getEtag());
+            urlQueue.setMimeType(entry.getValue().getMimeType());
+            urlQueue.setCreateTime(SystemUtil.currentTimeMillis());
+            urlSet.add(urlQueue.getUrl());
+            frontier.add(urlQueue);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.service.UrlQueueService#hasWaitingUrls(java.lang.String)
+     */
+    @Override
+    public boolean hasWaitingUrls(final String sessionId) {
+        return size(sessionId) > 0;
+    }
+
+    /**
+     * Returns the number of queued urls in a session.
+     *
+     * @param sessionId session id
+     * @return the number of urls
+     */
+    public int size(final String sessionId) {
+        final Frontier frontier = frontierMap.get(sessionId);
+        return frontier == null ? 0 : frontier.size();
+    }
+
+    protected static String getHostKey(final String url) {
+        if (url == null) {
+            return "";
+        }
+        return RobotsTxtRules.getHostUrl(url);
+    }
+
+    protected class Frontier {
+        protected final Map<String, HostQueue> hostQueueMap = new HashMap<>();
+
+        protected final PriorityQueue<HostQueue> readyQueue = new PriorityQueue<>();
+
+        // ready times of hosts which have no url
+        protected final Map<String, Long> readyTimeMap = new HashMap<>();
+
+        protected long nextExpirationTime = 0;
+
+        protected long sequence = 0;
+
+        protected int size = 0;
+
+        protected synchronized int size() {
+            return size;
+        }
+
+        protected synchronized void add(final UrlQueueImpl<Long> urlQueue) {
+            addUrlQueue(urlQueue);
+        }
+
+        protected synchronized void addAll(final List<UrlQueueImpl<Long>> urlQueueList) {
+            for (final UrlQueueImpl<Long> urlQueue : urlQueueList) {
+                addUrlQueue(urlQueue);
+            }
+        }
+
+        protected void addUrlQueue(final UrlQueueImpl<Long> urlQueue) {
+            final HostQueue hostQueue = hostQueueMap.computeIfAbsent(getHostKey(urlQueue.getUrl()), key -> {
+                final HostQueue newHostQueue = new HostQueue(key);
+                final Long readyTime = readyTimeMap.remove(key);
+                if (readyTime != null) {
+                    newHostQueue.readyTime = readyTime.longValue();
+                }
+                return newHostQueue;
+            });
+            if (hostQueue.urlQueueList.isEmpty()) {
+                hostQueue.sequence = sequence++;
+                readyQueue.add(hostQueue);
+            }
+            hostQueue.urlQueueList.add(urlQueue);
+            size++;
+        }
+
+        protected synchronized List<UrlQueueImpl<Long>> pollBatch(final long now, final int max) {
+            final List<UrlQueueImpl<Long>> urlQueueList = new ArrayList<>(Math.min(max, size));
+            UrlQueueImpl<Long> urlQueue;
+            while (urlQueueList.size() < max && (urlQueue = poll(now, null)) != null) {
+                urlQueueList.add(urlQueue);
+            }
+            return urlQueueList;
+        }
+
+        protected synchronized List<UrlQueueImpl<Long>> pollAll() {
+            final List<UrlQueueImpl<Long>> urlQueueList = new ArrayList<>(size);
+            HostQueue hostQueue;
+            while ((hostQueue = readyQueue.poll()) != null) {
+                urlQueueList.addAll(hostQueue.urlQueueList);
+            }
+            hostQueueMap.clear();
+            readyTimeMap.clear();
+            size = 0;
+            return urlQueueList;
+        }
+
+        protected synchronized UrlQueueImpl<Long> poll(final long now, final Predicate<UrlQueueImpl<Long>> preferred) {
+            expireReadyTimes(now);
+
+            HostQueue hostQueue = readyQueue.peek();
+            if (hostQueue == null || hostQueue.readyTime > now) {
+                // no ready host
+                return null;
+            }
+            readyQueue.poll();
+
+            if (preferred != null && !preferred.test(hostQueue.urlQueueList.peek())) {
+                // look for a ready host which is preferred
+                final List<HostQueue> skippedList = new ArrayList<>();
+                skippedList.add(hostQueue);
+                hostQueue = null;
+                for (int i = 1; i < maxPreferredHostScanSize && !readyQueue.isEmpty() && readyQueue.peek().readyTime <= now; i++) {
+                    final HostQueue next = readyQueue.poll();
+                    if (preferred.test(next.urlQueueList.peek())) {
+                        hostQueue = next;
+                        break;
+                    }
+                    skippedList.add(next);
+                }
+                readyQueue.addAll(skippedList);
+                if (hostQueue == null) {
+                    return null;
+                }
+            }
+
+            final UrlQueueImpl<Long> urlQueue = hostQueue.urlQueueList.poll();
+            size--;
+            hostQueue.readyTime = now + hostIntervalMillis;
+            if (hostQueue.urlQueueList.isEmpty()) {
+                hostQueueMap.remove(hostQueue.hostKey);
+                if (hostQueue.readyTime > now) {
+                    // keep the interval for urls added later
+                    readyTimeMap.put(hostQueue.hostKey, hostQueue.readyTime);
+                }
+            } else {
+                // move to the tail of hosts which have the same ready time
+                hostQueue.sequence = sequence++;
+                readyQueue.add(hostQueue);
+            }
+            return urlQueue;
+        }
+
+        protected void expireReadyTimes(final long now) {
+            if (now < nextExpirationTime || readyTimeMap.isEmpty()) {
+                return;
+            }
+            readyTimeMap.values().removeIf(readyTime -> readyTime.longValue() <= now);
+            nextExpirationTime = now + hostIntervalMillis;
+        }
+    }
+
+    protected static class HostQueue implements Comparable<HostQueue> {
+        protected final String hostKey;
+
+        protected final Queue<UrlQueueImpl<Long>> urlQueueList = new LinkedList<>();
+
+        protected long readyTime = 0;
+
+        protected long sequence = 0;
+
+        protected HostQueue(final String hostKey) {
+            this.hostKey = hostKey;
+        }
+
+        @Override
+        public int compareTo(final HostQueue o) {
+            if (readyTime != o.readyTime) {
+                return readyTime < o.readyTime ? -1 : 1;
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+
+    public long getHostIntervalMillis() {
+        return hostIntervalMillis;
+    }
+
+    public void setHostIntervalMillis(final long hostIntervalMillis) {
+        this.hostIntervalMillis = hostIntervalMillis;
+    }
+
+    public void setMaxPreferredHostScanSize(final int maxPreferredHostScanSize) {
+        this.maxPreferredHostScanSize = maxPreferredHostScanSize;
+    }
+}
@@ -16,9 +16,12 @@
 package org.codelibs.fess.crawler.service.impl;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.function.Predicate;
 
 import javax.annotation.Resource;
 
@@ -27,7 +30,6 @@ import org.codelibs.core.lang.SystemUtil;
 import org.codelibs.fess.crawler.Constants;
 import org.codelibs.fess.crawler.entity.AccessResult;
 import org.codelibs.fess.crawler.entity.AccessResultImpl;
-import org.codelibs.fess.crawler.entity.UrlQueue;
 import org.codelibs.fess.crawler.entity.UrlQueueImpl;
 import org.codelibs.fess.crawler.helper.MemoryDataHelper;
 import org.codelibs.fess.crawler.service.UrlQueueService;
@@ -45,6 +47,8 @@ public class UrlQueueServiceImpl implements UrlQueueService<UrlQueueImpl<Long>>
     @Resource
     protected MemoryDataHelper dataHelper;
 
+    protected int maxPreferredScanSize = 100;
+
     /*
      * (non-Javadoc)
      *
@@ -69,17 +73,13 @@ public class UrlQueueServiceImpl implements UrlQueueService<UrlQueueImpl<Long>>
      */
     @Override
     public void add(final String sessionId, final String url) {
-        final Queue<UrlQueueImpl<Long>> urlQueueList = dataHelper.getUrlQueueList(sessionId);
-        synchronized (urlQueueList) {
-            final UrlQueueImpl<Long> urlQueue = new UrlQueueImpl<>();
-            urlQueue.setSessionId(sessionId);
-            urlQueue.setMethod(Constants.GET_METHOD);
-            urlQueue.setUrl(url);
-            urlQueue.setUrl(url);
-            urlQueue.setDepth(0);
-            urlQueue.setCreateTime(SystemUtil.currentTimeMillis());
-            urlQueueList.add(urlQueue);
-        }
+        final UrlQueueImpl<Long> urlQueue = new UrlQueueImpl<>();
+        urlQueue.setSessionId(sessionId);
+        urlQueue.setMethod(Constants.GET_METHOD);
+        urlQueue.setUrl(url);
+        urlQueue.setDepth(0);
+        urlQueue.setCreateTime(SystemUtil.currentTimeMillis());
+        insert(urlQueue);
     }
 
     /*
@@ -91,10 +91,10 @@ public class UrlQueueServiceImpl implements UrlQueueService<UrlQueueImpl<Long>>
      */
     @Override
     public void insert(final UrlQueueImpl<Long> urlQueue) {
-        final Queue<UrlQueueImpl<Long>> urlQueueList = dataHelper.getUrlQueueList(urlQueue.getSessionId());
-        synchronized (urlQueueList) {
-            urlQueueList.add(urlQueue);
+        if (urlQueue.getUrl() != null) {
+            dataHelper.getUrlQueueUrlSet(urlQueue.getSessionId()).add(urlQueue.getUrl());
         }
+        dataHelper.getUrlQueueList(urlQueue.getSessionId()).add(urlQueue);
     }
 
     /*
@@ -126,19 +126,19 @@ public class UrlQueueServiceImpl implements UrlQueueService<UrlQueueImpl<Long>>
     @Override
     public void offerAll(final String sessionId, final List<UrlQueueImpl<Long>> newUrlQueueList) {
         final Queue<UrlQueueImpl<Long>> urlQueueList = dataHelper.getUrlQueueList(sessionId);
-        synchronized (urlQueueList) {
-            final List<UrlQueueImpl<Long>> targetList = new ArrayList<>();
-            for (final UrlQueueImpl<Long> urlQueue : newUrlQueueList) {
-                if (isNewUrl(urlQueue, urlQueueList)) {
-                    targetList.add(urlQueue);
-                }
+        final Set<String> urlSet = dataHelper.getUrlQueueUrlSet(sessionId);
+        final List<UrlQueueImpl<Long>> targetList = new ArrayList<>();
+        for (final UrlQueueImpl<Long> urlQueue : newUrlQueueList) {
+            // add to the set first so that only one thread can queue the url
+            if (isNewUrl(urlQueue, urlSet) && urlSet.add(urlQueue.getUrl())) {
+                targetList.add(urlQueue);
             }
-            urlQueueList.addAll(targetList);
         }
+        urlQueueList.addAll(targetList);
 
     }
 
-    protected boolean isNewUrl(final UrlQueueImpl<Long> urlQueue, final Queue<UrlQueueImpl<Long>> urlQueueList) {
+    protected boolean isNewUrl(final UrlQueueImpl<Long> urlQueue, final Set<String> urlSet) {
 
         final String url = urlQueue.getUrl();
         if (StringUtil.isBlank(url)) {
@@ -149,13 +149,11 @@ public class UrlQueueServiceImpl implements UrlQueueService<UrlQueueImpl<Long>>
         }
 
         // check it in queue
-        for (final UrlQueue<Long> urlInQueue : urlQueueList) {
-            if (url.equals(urlInQueue.getUrl())) {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("URL exists in a queue: {}", url);
-                }
-                return false;
+        if (urlSet.contains(url) || dataHelper.getPolledUrlSet(urlQueue.getSessionId()).contains(url)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("URL exists in a queue: {}", url);
             }
+            return false;
         }
 
         // check it in result
@@ -178,9 +176,69 @@ public class UrlQueueServiceImpl implements UrlQueueService<UrlQueueImpl<Long>>
      */
     @Override
     public UrlQueueImpl<Long> poll(final String sessionId) {
+        final UrlQueueImpl<Long> urlQueue = dataHelper.getUrlQueueList(sessionId).poll();
+        if (urlQueue != null && urlQueue.getUrl() != null) {
+            dataHelper.getUrlQueueUrlSet(sessionId).remove(urlQueue.getUrl());
+        }
+        return urlQueue;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.service.UrlQueueService#poll(java.lang.String,
+     * java.util.function.Predicate)
+     */
+    @Override
+    public UrlQueueImpl<Long> poll(final String sessionId, final Predicate<UrlQueueImpl<Long>> preferred) {
+        final Queue<UrlQueueImpl<Long>> urlQueueList = dataHelper.getUrlQueueList(sessionId);
+        final Iterator<UrlQueueImpl<Long>> iterator = urlQueueList.iterator();
+        for (int i = 0; i < maxPreferredScanSize && iterator.hasNext(); i++) {
+            final UrlQueueImpl<Long> urlQueue = iterator.next();
+            // the url may be taken by other threads
+            if (preferred.test(urlQueue) && urlQueueList.remove(urlQueue)) {
+                if (urlQueue.getUrl() != null) {
+                    dataHelper.getUrlQueueUrlSet(sessionId).remove(urlQueue.getUrl());
+                }
+                return urlQueue;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.service.UrlQueueService#pollBatch(java.lang.String, int)
+     */
+    @Override
+    public List<UrlQueueImpl<Long>> pollBatch(final String sessionId, final int size) {
         final Queue<UrlQueueImpl<Long>> urlQueueList = dataHelper.getUrlQueueList(sessionId);
-        synchronized (urlQueueList) {
-            return urlQueueList.poll();
+        final Set<String> urlSet = dataHelper.getUrlQueueUrlSet(sessionId);
+        final Set<String> polledUrlSet = dataHelper.getPolledUrlSet(sessionId);
+        final List<UrlQueueImpl<Long>> targetList = new ArrayList<>(size);
+        UrlQueueImpl<Long> urlQueue;
+        while (targetList.size() < size && (urlQueue = urlQueueList.poll()) != null) {
+            if (urlQueue.getUrl() != null) {
+                // keep the url as a queued one until it's released
+                polledUrlSet.add(urlQueue.getUrl());
+                urlSet.remove(urlQueue.getUrl());
+            }
+            targetList.add(urlQueue);
+        }
+        return targetList;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.codelibs.fess.crawler.service.UrlQueueService#release(java.lang.String,
+     * org.codelibs.fess.crawler.entity.UrlQueue)
+     */
+    @Override
+    public void release(final String sessionId, final UrlQueueImpl<Long> urlQueue) {
+        if (urlQueue.getUrl() != null) {
+            dataHelper.getPolledUrlSet(sessionId).remove(urlQueue.getUrl());
         }
     }
 
@@ -202,28 +260,31 @@ public class UrlQueueServiceImpl implements UrlQueueService<UrlQueueImpl<Long>>
      */
     @Override
     public boolean visited(final UrlQueueImpl<Long> urlQueue) {
-        final Queue<UrlQueueImpl<Long>> urlQueueList = dataHelper.getUrlQueueList(urlQueue.getSessionId());
-        synchronized (urlQueueList) {
-            return !isNewUrl(urlQueue, urlQueueList);
-        }
+        return !isNewUrl(urlQueue, dataHelper.getUrlQueueUrlSet(urlQueue.getSessionId()));
     }
 
     @Override
     public void generateUrlQueues(final String previousSessionId, final String sessionId) {
         final Queue<UrlQueueImpl<Long>> urlQueueList = dataHelper.getUrlQueueList(sessionId);
+        final Set<String> urlSet = dataHelper.getUrlQueueUrlSet(sessionId);
         final Map<String, AccessResultImpl<Long>> arMap = dataHelper.getAccessResultMap(previousSessionId);
         for (final Map.Entry<String, AccessResultImpl<Long>> entry : arMap.entrySet()) {
-            synchronized (urlQueueList) {
-                final UrlQueueImpl<Long> urlQueue = new UrlQueueImpl<>();
-                urlQueue.setSessionId(sessionId);
-                urlQueue.setMethod(entry.getValue().getMethod());
-                urlQueue.setUrl(entry.getValue().getUrl());
-                urlQueue.setParentUrl(entry.getValue().getParentUrl());
-                urlQueue.setDepth(0);
-                urlQueue.setLastModified(entry.getValue().getLastModified());
-                urlQueue.setCreateTime(SystemUtil.currentTimeMillis());
-                urlQueueList.add(urlQueue);
-            }
+            final UrlQueueImpl<Long> urlQueue = new UrlQueueImpl<>();
+            urlQueue.setSessionId(sessionId);
+            urlQueue.setMethod(entry.getValue().getMethod());
+            urlQueue.setUrl(entry.getValue().getUrl());
+            urlQueue.setParentUrl(entry.getValue().getParentUrl());
+            urlQueue.setDepth(0);
+            urlQueue.setLastModified(entry.getValue().getLastModified());
+            urlQueue.setEtag(entry.getValue().getEtag());
+            urlQueue.setMimeType(entry.getValue().getMimeType());
+            urlQueue.setCreateTime(SystemUtil.currentTimeMillis());
+            urlSet.add(urlQueue.getUrl());
+            urlQueueList.add(urlQueue);
         }
     }
+
+    public void setMaxPreferredScanSize(final int maxPreferredScanSize) {
+        this.maxPreferredScanSize = maxPreferredScanSize;
+    }
 }
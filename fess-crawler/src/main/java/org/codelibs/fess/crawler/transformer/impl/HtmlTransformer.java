@@ -16,6 +16,7 @@
 package org.codelibs.fess.crawler.transformer.impl;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -100,6 +101,8 @@ public class HtmlTransformer extends AbstractTransformer {
 
     private final ThreadLocal<CachedXPathAPI> xpathAPI = new ThreadLocal<>();
 
+    private final ThreadLocal<byte[]> responseBodyBytes = new ThreadLocal<>();
+
     @Override
     public ResultData transform(final ResponseData responseData) {
         if (responseData == null || !responseData.hasResponseBody()) {
@@ -122,6 +125,7 @@ public class HtmlTransformer extends AbstractTransformer {
             }
         } finally {
             xpathAPI.remove();
+            responseBodyBytes.remove();
         }
 
         final Object redirectUrlObj = responseData.getMetaDataMap().get(LOCATION_HEADER);
@@ -158,7 +162,8 @@ public class HtmlTransformer extends AbstractTransformer {
 
     protected void storeChildUrls(final ResponseData responseData, final ResultData resultData) {
         List<RequestData> requestDataList = new ArrayList<>();
-        try (final InputStream is = responseData.getResponseBody()) {
+        final byte[] bytes = responseBodyBytes.get();
+        try (final InputStream is = bytes != null ? new ByteArrayInputStream(bytes) : responseData.getResponseBody()) {
             final DOMParser parser = getDomParser();
             parser.parse(new InputSource(is));
             final Document document = parser.getDocument();
@@ -207,6 +212,8 @@ public class HtmlTransformer extends AbstractTransformer {
     protected void storeData(final ResponseData responseData, final ResultData resultData) {
         try (final InputStream is = responseData.getResponseBody()) {
             final byte[] data = InputStreamUtil.getBytes(is);
+            // child urls are parsed from these bytes
+            responseBodyBytes.set(data);
             resultData.setData(data);
             resultData.setEncoding(responseData.getCharSet());
         } catch (final CrawlerSystemException e) {
@@ -217,7 +224,7 @@ public class HtmlTransformer extends AbstractTransformer {
     }
 
     protected void updateCharset(final ResponseData responseData) {
-        try (final InputStream is = responseData.getResponseBody()) {
+        try (final InputStream is = responseData.getResponseBodyHead(preloadSizeForCharset)) {
             final String encoding = loadCharset(is);
             if (encoding == null) {
                 if (defaultEncoding == null) {
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * HeadCaptureInputStream copies bytes read from a given stream into an
+ * output stream, and keeps the head of them in memory. Each byte is written
+ * to the output stream only once, so a body can be sniffed through this
+ * stream with mark/reset while it is stored. A mark is valid while the
+ * stream position stays in the captured head.
+ *
+ * @author shinsuke
+ *
+ */
+public class HeadCaptureInputStream extends InputStream {
+
+    private static final int INITIAL_HEAD_SIZE = 1024;
+
+    protected final InputStream inputStream;
+
+    protected final OutputStream outputStream;
+
+    protected byte[] head;
+
+    protected int headCount = 0;
+
+    protected int headLimit;
+
+    protected long position = 0;
+
+    protected long markPosition = -1;
+
+    public HeadCaptureInputStream(final InputStream inputStream, final OutputStream outputStream, final int headSize) {
+        this.inputStream = inputStream;
+        this.outputStream = outputStream;
+        headLimit = Math.max(headSize, 0);
+        head = new byte[Math.min(headLimit, INITIAL_HEAD_SIZE)];
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        final int n = read(b, 0, 1);
+        return n == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (position < headCount) {
+            // replay bytes after reset
+            final int n = Math.min(len, headCount - (int) position);
+            System.arraycopy(head, (int) position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        final int n = inputStream.read(b, off, len);
+        if (n > 0) {
+            outputStream.write(b, off, n);
+            if (position == headCount && headCount < headLimit) {
+                final int size = Math.min(n, headLimit - headCount);
+                ensureCapacity(headCount + size);
+                System.arraycopy(b, off, head, headCount, size);
+                headCount += size;
+            }
+            position += n;
+        }
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.max(headCount - position, 0) + inputStream.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+        markPosition = position;
+        if (position <= headCount) {
+            headLimit = (int) Math.max(headLimit, Math.min(Integer.MAX_VALUE - 8L, position + readlimit));
+        }
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        if (markPosition < 0 || position > headCount && position != markPosition) {
+            throw new IOException("Resetting to invalid mark");
+        }
+        position = markPosition;
+    }
+
+    /**
+     * Reads the rest of the stream, so all bytes are copied to the output stream.
+     *
+     * @return the number of bytes read from the underlying stream
+     * @throws IOException if an I/O error occurs
+     */
+    public long drain() throws IOException {
+        return drain(Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads the rest of the stream until its size exceeds a given length.
+     * A returned value is greater than maxLength if the stream is not read to the end.
+     *
+     * @param maxLength the max length of the stream
+     * @return the number of bytes read from the underlying stream
+     * @throws IOException if an I/O error occurs
+     */
+    public long drain(final long maxLength) throws IOException {
+        final byte[] buffer = new byte[8192];
+        while (getByteCount() <= maxLength && read(buffer, 0, buffer.length) != -1) {
+            // copied to the output stream
+        }
+        return getByteCount();
+    }
+
+    /**
+     * @return the captured head of the stream
+     */
+    public byte[] getHead() {
+        return Arrays.copyOf(head, headCount);
+    }
+
+    /**
+     * @return the number of bytes read from the underlying stream
+     */
+    public long getByteCount() {
+        return Math.max(position, headCount);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    protected void ensureCapacity(final int size) {
+        if (size > head.length) {
+            head = Arrays.copyOf(head, Math.max(size, Math.min(head.length * 2, headLimit)));
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.codelibs.core.lang.StringUtil;
+
+/**
+ * RobotsTxtRules keeps Allow/Disallow paths of robots.txt for each host.
+ * Paths of a host are stored in a radix tree, so checking an url costs
+ * O(path length) and does not depend on the number of hosts.
+ * The longest matched path wins, and Allow wins on a tie.
+ *
+ * @author shinsuke
+ *
+ */
+public class RobotsTxtRules {
+
+    public enum Result {
+        NONE, ALLOWED, DISALLOWED
+    }
+
+    protected final Map<String, HostRules> hostRulesMap = new ConcurrentHashMap<>();
+
+    /**
+     * Returns a host part of a given url, such as http://example.com:8080.
+     *
+     * @param url URL
+     * @return scheme, host and port of the url
+     */
+    public static String getHostUrl(final String url) {
+        final int idx = url.indexOf('/', url.indexOf("://") + 3);
+        if (idx >= 0) {
+            return url.substring(0, idx);
+        }
+        return url;
+    }
+
+    public void addRules(final String hostUrl, final String[] disallows, final String[] allows) {
+        final HostRules hostRules = new HostRules();
+        if (disallows != null) {
+            for (final String path : disallows) {
+                if (StringUtil.isNotBlank(path)) {
+                    hostRules.add(path, false);
+                }
+            }
+        }
+        if (allows != null) {
+            for (final String path : allows) {
+                if (StringUtil.isNotBlank(path)) {
+                    hostRules.add(path, true);
+                }
+            }
+        }
+        hostRulesMap.put(hostUrl, hostRules);
+    }
+
+    public Result match(final String url) {
+        if (url == null || hostRulesMap.isEmpty()) {
+            return Result.NONE;
+        }
+        final String hostUrl = getHostUrl(url);
+        final HostRules hostRules = hostRulesMap.get(hostUrl);
+        if (hostRules == null) {
+            return Result.NONE;
+        }
+        return hostRules.match(url.substring(hostUrl.length()));
+    }
+
+    public boolean contains(final String hostUrl) {
+        return hostRulesMap.containsKey(hostUrl);
+    }
+
+    public boolean isEmpty() {
+        return hostRulesMap.isEmpty();
+    }
+
+    public void clear() {
+        hostRulesMap.clear();
+    }
+
+    protected static class HostRules {
+        protected final Node root = new Node(StringUtil.EMPTY);
+
+        protected final List<Rule> anywhereRuleList = new ArrayList<>();
+
+        protected void add(final String path, final boolean allow) {
+            if (path.charAt(0) != '/') {
+                anywhereRuleList.add(new Rule(path, allow));
+                return;
+            }
+
+            int end = path.length();
+            for (int i = 0; i < path.length(); i++) {
+                final char c = path.charAt(i);
+                if (c == '*' || c == '$') {
+                    end = i;
+                    break;
+                }
+            }
+            root.insert(path.substring(0, end), new Rule(path, allow));
+        }
+
+        protected Result match(final String path) {
+            Rule matchedRule = null;
+            Node node = root;
+            int pos = 0;
+            while (node != null) {
+                if (node.ruleList != null) {
+                    for (final Rule rule : node.ruleList) {
+                        if (rule.matches(path) && rule.isPreferredTo(matchedRule)) {
+                            matchedRule = rule;
+                        }
+                    }
+                }
+                node = node.next(path, pos);
+                if (node != null) {
+                    pos += node.label.length();
+                }
+            }
+
+            for (final Rule rule : anywhereRuleList) {
+                if (rule.matches(path) && rule.isPreferredTo(matchedRule)) {
+                    matchedRule = rule;
+                }
+            }
+
+            if (matchedRule == null) {
+                return Result.NONE;
+            }
+            return matchedRule.allow ? Result.ALLOWED : Result.DISALLOWED;
+        }
+    }
+
+    protected static class Node {
+        protected String label;
+
+        protected Map<Character, Node> children;
+
+        protected List<Rule> ruleList;
+
+        protected Node(final String label) {
+            this.label = label;
+        }
+
+        protected Node next(final String path, final int pos) {
+            if (children == null || pos >= path.length()) {
+                return null;
+            }
+            final Node child = children.get(path.charAt(pos));
+            if (child != null && path.startsWith(child.label, pos)) {
+                return child;
+            }
+            return null;
+        }
+
+        protected void insert(final String key, final Rule rule) {
+            Node node = this;
+            int pos = 0;
+            while (pos < key.length()) {
+                final Node child = node.children == null ? null : node.children.get(key.charAt(pos));
+                if (child == null) {
+                    final Node newNode = new Node(key.substring(pos));
+                    node.addChild(newNode);
+                    node = newNode;
+                    break;
+                }
+
+                final String childLabel = child.label;
+                int len = 0;
+                while (len < childLabel.length() && pos + len < key.length() && childLabel.charAt(len) == key.charAt(pos + len)) {
+                    len++;
+                }
+                if (len < childLabel.length()) {
+                    // split the edge
+                    final Node middle = new Node(childLabel.substring(0, len));
+                    child.label = childLabel.substring(len);
+                    middle.addChild(child);
+                    node.children.put(middle.label.charAt(0), middle);
+                    node = middle;
+                } else {
+                    node = child;
+                }
+                pos += len;
+            }
+            if (node.ruleList == null) {
+                node.ruleList = new ArrayList<>(2);
+            }
+            node.ruleList.add(rule);
+        }
+
+        protected void addChild(final Node child) {
+            if (children == null) {
+                children = new HashMap<>(4);
+            }
+            children.put(child.label.charAt(0), child);
+        }
+    }
+
+    protected static class Rule {
+        protected final boolean allow;
+
+        protected final int length;
+
+        protected final Pattern pattern;
+
+        protected final boolean exact;
+
+        protected Rule(final String path, final boolean allow) {
+            this.allow = allow;
+            this.length = path.length();
+            final boolean wildcard = path.indexOf('*') >= 0;
+            final int dollarIndex = path.indexOf('$');
+            if (!wildcard && path.charAt(0) == '/' && (dollarIndex == -1 || dollarIndex == path.length() - 1)) {
+                // literal path which is checked by the tree
+                pattern = null;
+                exact = dollarIndex != -1;
+            } else {
+                pattern = Pattern.compile(toRegex(path));
+                exact = false;
+            }
+        }
+
+        protected boolean matches(final String path) {
+            if (pattern != null) {
+                return pattern.matcher(path).matches();
+            }
+            if (exact) {
+                return path.length() == length - 1;
+            }
+            return true;
+        }
+
+        protected boolean isPreferredTo(final Rule other) {
+            if (other == null || length > other.length) {
+                return true;
+            }
+            return length == other.length && allow && !other.allow;
+        }
+
+        protected static String toRegex(final String path) {
+            final StringBuilder buf = new StringBuilder(path.length() + 10);
+            if (path.charAt(0) != '/') {
+                buf.append(".*");
+            }
+            final boolean endAnchor = path.endsWith("$");
+            final String value = endAnchor ? path.substring(0, path.length() - 1) : path;
+            int start = 0;
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) == '*') {
+                    if (i > start) {
+                        buf.append(Pattern.quote(value.substring(start, i)));
+                    }
+                    buf.append(".*");
+                    start = i + 1;
+                }
+            }
+            if (start < value.length()) {
+                buf.append(Pattern.quote(value.substring(start)));
+            }
+            if (!endAnchor) {
+                buf.append(".*");
+            }
+            return buf.toString();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * UrlPatternMatcher is a compiled form of URL patterns.
+ * Patterns which start with a literal prefix are indexed by a prefix trie,
+ * so only patterns whose prefix matches a given URL are evaluated.
+ * Other patterns are combined into one alternation.
+ *
+ * @author shinsuke
+ *
+ */
+public class UrlPatternMatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(UrlPatternMatcher.class);
+
+    private static final String META_CHARS = ".[]{}()*+?^$|\\";
+
+    private static final String QUANTIFIER_CHARS = "?*{";
+
+    private static final Pattern BACK_REFERENCE_PATTERN = Pattern.compile("\\\\([0-9]|k<)");
+
+    private static final Pattern INLINE_FLAG_PATTERN = Pattern.compile("\\(\\?[a-zA-Z-]+[:)]");
+
+    protected final List<Pattern> sourceList;
+
+    protected final int size;
+
+    protected final Node root = new Node();
+
+    protected final Pattern combinedPattern;
+
+    protected final List<Pattern> otherPatternList = new ArrayList<>();
+
+    public UrlPatternMatcher(final List<Pattern> patternList) {
+        sourceList = patternList;
+        size = patternList.size();
+
+        final List<Pattern> combinableList = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            final Pattern pattern = patternList.get(i);
+            final String prefix = getLiteralPrefix(pattern);
+            if (prefix.length() > 0) {
+                root.add(prefix, pattern);
+            } else if (isCombinable(pattern)) {
+                combinableList.add(pattern);
+            } else {
+                otherPatternList.add(pattern);
+            }
+        }
+
+        combinedPattern = combine(combinableList);
+    }
+
+    /**
+     * Check if this matcher is compiled from a given pattern list.
+     *
+     * @param patternList a list of patterns
+     * @return true if the list is not changed
+     */
+    public boolean isCompiledFrom(final List<Pattern> patternList) {
+        return sourceList == patternList && size == patternList.size();
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Check if a given url matches one of patterns.
+     *
+     * @param url URL
+     * @return true if matched
+     */
+    public boolean matches(final String url) {
+        if (url == null || size == 0) {
+            return false;
+        }
+
+        Node node = root;
+        for (int i = 0; i < url.length() && node != null; i++) {
+            node = node.children.get(url.charAt(i));
+            if (node != null) {
+                for (final Pattern pattern : node.patternList) {
+                    if (pattern.matcher(url).matches()) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        if (combinedPattern != null && combinedPattern.matcher(url).matches()) {
+            return true;
+        }
+
+        for (final Pattern pattern : otherPatternList) {
+            if (pattern.matcher(url).matches()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    protected Pattern combine(final List<Pattern> patternList) {
+        if (patternList.isEmpty()) {
+            return null;
+        }
+        if (patternList.size() == 1) {
+            return patternList.get(0);
+        }
+        final StringBuilder buf = new StringBuilder();
+        for (final Pattern pattern : patternList) {
+            if (buf.length() > 0) {
+                buf.append('|');
+            }
+            buf.append("(?:").append(pattern.pattern()).append(')');
+        }
+        try {
+            return Pattern.compile(buf.toString());
+        } catch (final PatternSyntaxException | StackOverflowError e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to combine url patterns.", e);
+            }
+            otherPatternList.addAll(patternList);
+            return null;
+        }
+    }
+
+    protected boolean isCombinable(final Pattern pattern) {
+        if (pattern.flags() != 0) {
+            return false;
+        }
+        final String regex = pattern.pattern();
+        return !BACK_REFERENCE_PATTERN.matcher(regex).find() && !INLINE_FLAG_PATTERN.matcher(regex).find();
+    }
+
+    /**
+     * Returns a literal string which all urls matched by a given pattern start with.
+     *
+     * @param pattern a pattern
+     * @return a literal prefix, or an empty string if it's not found
+     */
+    protected static String getLiteralPrefix(final Pattern pattern) {
+        if (pattern.flags() != 0) {
+            return "";
+        }
+        final String regex = pattern.pattern();
+        if (regex.indexOf('|') >= 0) {
+            return "";
+        }
+
+        final StringBuilder buf = new StringBuilder();
+        int pos = regex.startsWith("^") ? 1 : 0;
+        while (pos < regex.length()) {
+            final char c = regex.charAt(pos);
+            if (c == '\\') {
+                if (pos + 1 >= regex.length()) {
+                    break;
+                }
+                final char next = regex.charAt(pos + 1);
+                if (Character.isLetterOrDigit(next)) {
+                    // character class, quote or back reference
+                    break;
+                }
+                buf.append(next);
+                pos += 2;
+            } else if (META_CHARS.indexOf(c) >= 0) {
+                break;
+            } else {
+                buf.append(c);
+                pos++;
+            }
+            if (pos < regex.length()) {
+                final char next = regex.charAt(pos);
+                if (QUANTIFIER_CHARS.indexOf(next) >= 0) {
+                    // the last char is optional
+                    buf.setLength(buf.length() - 1);
+                    if (buf.length() > 0 && Character.isHighSurrogate(buf.charAt(buf.length() - 1))) {
+                        buf.setLength(buf.length() - 1);
+                    }
+                    break;
+                } else if (next == '+') {
+                    break;
+                }
+            }
+        }
+        return buf.toString();
+    }
+
+    protected static class Node {
+        protected final Map<Character, Node> children = new HashMap<>();
+
+        protected final List<Pattern> patternList = new ArrayList<>();
+
+        protected void add(final String prefix, final Pattern pattern) {
+            Node node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), k -> new Node());
+            }
+            node.patternList.add(pattern);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.dbflute.utflute.core.PlainTestCase;
+
+/**
+ * @author shinsuke
+ *
+ */
+public class CrawlerContextTest extends PlainTestCase {
+
+    public void test_awaitNewUrls_lastThread() {
+        final CrawlerContext crawlerContext = new CrawlerContext();
+        crawlerContext.startThread();
+
+        final long startTime = System.currentTimeMillis();
+        assertFalse(crawlerContext.awaitNewUrls(crawlerContext.getUrlQueueVersion(), 60000L));
+        assertTrue(System.currentTimeMillis() - startTime < 60000L);
+        assertTrue(crawlerContext.isUrlQueueDrained());
+    }
+
+    public void test_awaitNewUrls_signal() throws Exception {
+        final CrawlerContext crawlerContext = new CrawlerContext();
+        crawlerContext.startThread();
+        crawlerContext.startThread();
+
+        final long version = crawlerContext.getUrlQueueVersion();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Boolean> future = executor.submit(() -> crawlerContext.awaitNewUrls(version, 60000L));
+            Thread.sleep(100L);
+            assertFalse(future.isDone());
+
+            crawlerContext.signalNewUrls();
+            assertTrue(future.get(10, TimeUnit.SECONDS));
+            assertFalse(crawlerContext.isUrlQueueDrained());
+
+            // the version is already changed
+            assertTrue(crawlerContext.awaitNewUrls(version, 60000L));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void test_awaitNewUrls_finishThread() throws Exception {
+        final CrawlerContext crawlerContext = new CrawlerContext();
+        crawlerContext.startThread();
+        crawlerContext.startThread();
+
+        final long version = crawlerContext.getUrlQueueVersion();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Boolean> future = executor.submit(() -> crawlerContext.awaitNewUrls(version, 60000L));
+            Thread.sleep(100L);
+            assertFalse(future.isDone());
+
+            // the other thread is finished without urls
+            crawlerContext.finishThread();
+            assertFalse(future.get(10, TimeUnit.SECONDS));
+            assertTrue(crawlerContext.isUrlQueueDrained());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void test_awaitNewUrls_timeout() {
+        final CrawlerContext crawlerContext = new CrawlerContext();
+        crawlerContext.startThread();
+        crawlerContext.startThread();
+
+        assertTrue(crawlerContext.awaitNewUrls(crawlerContext.getUrlQueueVersion(), 100L));
+        assertFalse(crawlerContext.isUrlQueueDrained());
+    }
+}
@@ -26,6 +26,7 @@ import org.codelibs.fess.crawler.client.CrawlerClientFactory;
 import org.codelibs.fess.crawler.client.FaultTolerantClient;
 import org.codelibs.fess.crawler.client.fs.FileSystemClient;
 import org.codelibs.fess.crawler.client.http.HcHttpClient;
+import org.codelibs.fess.crawler.client.http.JdkHttpClient;
 import org.codelibs.fess.crawler.container.StandardCrawlerContainer;
 import org.codelibs.fess.crawler.entity.AccessResultImpl;
 import org.codelibs.fess.crawler.entity.UrlQueue;
@@ -224,6 +225,38 @@ public class CrawlerTest extends PlainTestCase {
         }
     }
 
+    public void test_execute_web_async() throws Exception {
+        container.<CrawlerThread> prototype("crawlerThread", CrawlerThread.class, crawlerThread -> {
+            crawlerThread.setMaxInFlightRequestsPerThread(10);
+        }).singleton("jdkHttpClient", JdkHttpClient.class);
+        crawler.getClientFactory().addClient("http:.*", container.getComponent("jdkHttpClient"), 0);
+
+        final CrawlerWebServer server = new CrawlerWebServer(7070);
+        server.start();
+
+        final String url = "http://localhost:7070/";
+        try {
+            final int maxCount = 50;
+            final int numOfThread = 2;
+
+            final File file = File.createTempFile("crawler-", "");
+            file.delete();
+            file.mkdirs();
+            file.deleteOnExit();
+            fileTransformer.setPath(file.getAbsolutePath());
+            crawler.addUrl(url);
+            crawler.crawlerContext.setMaxAccessCount(maxCount);
+            crawler.crawlerContext.setNumOfThread(numOfThread);
+            crawler.urlFilter.addInclude(url + ".*");
+            final String sessionId = crawler.execute();
+            assertEquals(maxCount, dataService.getCount(sessionId));
+            assertEquals(0, crawler.crawlerContext.getActiveThreadCount().intValue());
+            dataService.delete(sessionId);
+        } finally {
+            server.stop();
+        }
+    }
+
     public void test_execute_xmlSitemaps() throws Exception {
         final CrawlerWebServer server = new CrawlerWebServer(7070);
         server.start();
@@ -329,6 +362,40 @@ public class CrawlerTest extends PlainTestCase {
         dataService.delete(sessionId);
     }
 
+    public void test_execute_file_idleSignal() throws Exception {
+        container.<CrawlerThread> prototype("crawlerThread", CrawlerThread.class, crawlerThread -> {
+            crawlerThread.setIdleSignalEnabled(true);
+            crawlerThread.setMaxIdleWaitMillis(60000L);
+        });
+
+        final File targetFile = ResourceUtil.getResourceAsFile("test");
+        String path = targetFile.getAbsolutePath();
+        if (!path.startsWith("/")) {
+            path = "/" + path.replace('\\', '/');
+        }
+        final String url = "file:" + path;
+
+        final int maxCount = 3;
+        final int numOfThread = 2;
+
+        final File file = File.createTempFile("crawler-", "");
+        file.delete();
+        file.mkdirs();
+        file.deleteOnExit();
+        fileTransformer.setPath(file.getAbsolutePath());
+        crawler.addUrl(url);
+        crawler.crawlerContext.setNumOfThread(numOfThread);
+        crawler.crawlerContext.setMaxDepth(1);
+        crawler.urlFilter.addInclude(url + ".*");
+        final long startTime = System.currentTimeMillis();
+        final String sessionId = crawler.execute();
+        // finished without waiting for maxIdleWaitMillis
+        assertTrue(System.currentTimeMillis() - startTime < 60000L);
+        assertTrue(crawler.crawlerContext.isUrlQueueDrained());
+        assertEquals(maxCount, dataService.getCount(sessionId));
+        dataService.delete(sessionId);
+    }
+
     public void test_execute_file_filtered() throws Exception {
         final File targetFile = ResourceUtil.getResourceAsFile("test");
         String path = targetFile.getAbsolutePath();
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codelibs.fess.crawler.entity.ResponseData;
+import org.codelibs.fess.crawler.entity.UrlQueueImpl;
+import org.codelibs.fess.crawler.rule.impl.RegexRule;
+import org.codelibs.fess.crawler.rule.impl.RuleManagerImpl;
+import org.dbflute.utflute.core.PlainTestCase;
+
+/**
+ * @author shinsuke
+ *
+ */
+public class CrawlerThreadTest extends PlainTestCase {
+
+    public void test_handleResponse_notModified() {
+        final List<String> processedList = new ArrayList<>();
+        final RegexRule pdfRule = new RegexRule();
+        pdfRule.setRuleId("pdfRule");
+        pdfRule.addRule("mimeType", "application/pdf");
+        pdfRule.setResponseProcessor(r -> processedList.add("pdfRule:" + r.getMimeType()));
+        final RegexRule defaultRule = new RegexRule();
+        defaultRule.setRuleId("defaultRule");
+        defaultRule.setDefaultRule(true);
+        defaultRule.setResponseProcessor(r -> processedList.add("defaultRule:" + r.getMimeType()));
+        final RuleManagerImpl ruleManager = new RuleManagerImpl();
+        ruleManager.addRule(pdfRule);
+        ruleManager.addRule(defaultRule);
+
+        final CrawlerThread crawlerThread = new CrawlerThread();
+        crawlerThread.crawlerContext = new CrawlerContext();
+        crawlerThread.crawlerContext.setRuleManager(ruleManager);
+
+        final UrlQueueImpl<Long> urlQueue = new UrlQueueImpl<>();
+        urlQueue.setUrl("http://localhost/test.pdf");
+        urlQueue.setLastModified(1000L);
+        urlQueue.setEtag("\"abc\"");
+        urlQueue.setMimeType("application/pdf");
+
+        // 304 response without Content-Type
+        final ResponseData responseData = new ResponseData();
+        responseData.setUrl(urlQueue.getUrl());
+        responseData.setHttpStatusCode(304);
+        responseData.setStatus(Constants.NOT_MODIFIED_STATUS);
+        responseData.setMimeType("application/octet-stream");
+        crawlerThread.handleResponse(urlQueue, responseData, System.currentTimeMillis());
+
+        assertEquals(1, processedList.size());
+        assertEquals("pdfRule:application/pdf", processedList.get(0));
+        assertEquals("pdfRule", responseData.getRuleId());
+        assertEquals("\"abc\"", responseData.getEtag());
+        assertEquals(1000L, responseData.getLastModified().getTime());
+    }
+
+    public void test_handleResponse_modified() {
+        final List<String> processedList = new ArrayList<>();
+        final RegexRule defaultRule = new RegexRule();
+        defaultRule.setRuleId("defaultRule");
+        defaultRule.setDefaultRule(true);
+        defaultRule.setResponseProcessor(r -> processedList.add("defaultRule:" + r.getMimeType()));
+        final RuleManagerImpl ruleManager = new RuleManagerImpl();
+        ruleManager.addRule(defaultRule);
+
+        final CrawlerThread crawlerThread = new CrawlerThread();
+        crawlerThread.crawlerContext = new CrawlerContext();
+        crawlerThread.crawlerContext.setRuleManager(ruleManager);
+
+        final UrlQueueImpl<Long> urlQueue = new UrlQueueImpl<>();
+        urlQueue.setUrl("http://localhost/test.pdf");
+        urlQueue.setMimeType("application/pdf");
+
+        // a changed content keeps its own mime type
+        final ResponseData responseData = new ResponseData();
+        responseData.setUrl(urlQueue.getUrl());
+        responseData.setHttpStatusCode(200);
+        responseData.setStatus(Constants.OK_STATUS);
+        responseData.setMimeType("text/html");
+        crawlerThread.handleResponse(urlQueue, responseData, System.currentTimeMillis());
+
+        assertEquals("defaultRule:text/html", processedList.get(0));
+    }
+}
@@ -15,15 +15,38 @@
  */
 package org.codelibs.fess.crawler.client.http;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpHost;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.codelibs.core.io.InputStreamUtil;
+import org.codelibs.fess.crawler.Constants;
 import org.codelibs.fess.crawler.CrawlerContext;
+import org.codelibs.fess.crawler.builder.RequestDataBuilder;
 import org.codelibs.fess.crawler.container.StandardCrawlerContainer;
 import org.codelibs.fess.crawler.entity.ResponseData;
 import org.codelibs.fess.crawler.exception.CrawlingAccessException;
+import org.codelibs.fess.crawler.exception.MaxLengthExceededException;
 import org.codelibs.fess.crawler.filter.UrlFilter;
 import org.codelibs.fess.crawler.filter.impl.UrlFilterImpl;
+import org.codelibs.fess.crawler.helper.ContentLengthHelper;
 import org.codelibs.fess.crawler.helper.MemoryDataHelper;
 import org.codelibs.fess.crawler.helper.RobotsTxtHelper;
 import org.codelibs.fess.crawler.helper.impl.MimeTypeHelperImpl;
@@ -31,12 +54,19 @@ import org.codelibs.fess.crawler.service.impl.UrlFilterServiceImpl;
 import org.codelibs.fess.crawler.util.CrawlerWebServer;
 import org.codelibs.fess.crawler.util.CrawlingParameterUtil;
 import org.dbflute.utflute.core.PlainTestCase;
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.handler.AbstractHandler;
 
 /**
  * @author shinsuke
  * 
  */
 public class HcHttpClientTest extends PlainTestCase {
+    // 2001 bytes of 'a' compressed by brotli
+    private static final byte[] BROTLI_DATA = { (byte) 0x02, (byte) 0xfa, (byte) 0x00, (byte) 0x00, (byte) 0x44, (byte) 0x58, (byte) 0x38,
+            (byte) 0x16, (byte) 0x90, (byte) 0xe2, (byte) 0x00 };
+
     public HcHttpClient httpClient;
 
     public UrlFilter urlFilter;
@@ -68,6 +98,55 @@ public class HcHttpClientTest extends PlainTestCase {
         }
     }
 
+    public void test_doGet_poolStats() {
+        final CrawlerWebServer server = new CrawlerWebServer(7070);
+        server.start();
+
+        final String url = "http://localhost:7070/";
+        try {
+            httpClient.addMaxConnectionsPerHost("http://localhost:7070", 3);
+            final ResponseData responseData = httpClient.doGet(url);
+            assertEquals(200, responseData.getHttpStatusCode());
+
+            final PoolStats totalStats = httpClient.getTotalPoolStats();
+            assertEquals(200, totalStats.getMax());
+            assertEquals(0, totalStats.getLeased());
+
+            final Map<HttpRoute, PoolStats> routeStatsMap = httpClient.getRoutePoolStats();
+            final PoolStats routeStats = routeStatsMap.get(HcHttpClient.createHttpRoute("http://localhost:7070"));
+            assertNotNull(routeStats);
+            assertEquals(3, routeStats.getMax());
+            assertEquals(0, routeStats.getLeased());
+            assertEquals(0, routeStats.getPending());
+        } finally {
+            server.stop();
+        }
+    }
+
+    public void test_init_sharedConnectionManager() {
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        final HcHttpClient client = new HcHttpClient();
+        client.setClientConnectionManager(connectionManager);
+        client.addMaxConnectionsPerHost("http://localhost:7070", 3);
+        client.init();
+        try {
+            assertEquals(3, connectionManager.getMaxPerRoute(HcHttpClient.createHttpRoute("http://localhost:7070")));
+            // other settings are kept as the owner configured
+            assertEquals(2, connectionManager.getMaxPerRoute(HcHttpClient.createHttpRoute("http://example.com")));
+        } finally {
+            client.destroy();
+            connectionManager.shutdown();
+        }
+    }
+
+    public void test_createHttpRoute() {
+        assertEquals(new HttpRoute(new HttpHost("example.com", 80, "http"), null, false), HcHttpClient.createHttpRoute("http://example.com"));
+        assertEquals(new HttpRoute(new HttpHost("example.com", 443, "https"), null, true),
+                HcHttpClient.createHttpRoute("https://example.com"));
+        assertEquals(new HttpRoute(new HttpHost("example.com", 8443, "https"), null, true),
+                HcHttpClient.createHttpRoute("https://example.com:8443"));
+    }
+
     public void test_parseLastModified() {
         final String value = "Mon, 01 Jun 2009 21:02:45 GMT";
         final Date date = httpClient.parseLastModified(value);
@@ -132,6 +211,196 @@ public class HcHttpClientTest extends PlainTestCase {
         }
     }
 
+    public void test_execute_notModified() throws Exception {
+        final CrawlerWebServer server = new CrawlerWebServer(7070);
+        server.start();
+
+        final String url = "http://localhost:7070/";
+        try {
+            final Date lastModified = httpClient.doHead(url).getLastModified();
+            assertNotNull(lastModified);
+
+            final ResponseData responseData = httpClient.execute(
+                    RequestDataBuilder.newRequestData().get().url(url).ifModifiedSince(lastModified.getTime()).build());
+            assertEquals(Constants.NOT_MODIFIED_STATUS_CODE, responseData.getHttpStatusCode());
+            assertEquals(Constants.NOT_MODIFIED_STATUS, responseData.getStatus());
+            assertNull(responseData.getRedirectLocation());
+
+            final ResponseData modifiedResponseData = httpClient.execute(
+                    RequestDataBuilder.newRequestData().get().url(url).ifModifiedSince(lastModified.getTime() - 60 * 1000L).build());
+            assertEquals(200, modifiedResponseData.getHttpStatusCode());
+            assertEquals(Constants.OK_STATUS, modifiedResponseData.getStatus());
+        } finally {
+            server.stop();
+        }
+    }
+
+    public void test_createConditionalHeaders() {
+        assertEquals(0, httpClient.createConditionalHeaders(RequestDataBuilder.newRequestData().get().url("http://localhost/").build())
+                .size());
+        final List<Header> headerList = httpClient.createConditionalHeaders(RequestDataBuilder.newRequestData().get()
+                .url("http://localhost/").ifNoneMatch("\"abc\"").ifModifiedSince(784111777000L).build());
+        assertEquals(2, headerList.size());
+        assertEquals("If-None-Match", headerList.get(0).getName());
+        assertEquals("\"abc\"", headerList.get(0).getValue());
+        assertEquals("If-Modified-Since", headerList.get(1).getName());
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", headerList.get(1).getValue());
+    }
+
+    public void test_createDecodingInputStream() throws Exception {
+        final byte[] data = "<html><body>content</body></html>".getBytes(StandardCharsets.UTF_8);
+
+        final ByteArrayOutputStream gzipOut = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipOut)) {
+            out.write(data);
+        }
+        try (InputStream in = httpClient.createDecodingInputStream(new ByteArrayInputStream(gzipOut.toByteArray()), "gzip")) {
+            assertEquals(new String(data, StandardCharsets.UTF_8), new String(InputStreamUtil.getBytes(in), StandardCharsets.UTF_8));
+        }
+
+        final ByteArrayOutputStream deflateOut = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(deflateOut)) {
+            out.write(data);
+        }
+        try (InputStream in = httpClient.createDecodingInputStream(new ByteArrayInputStream(deflateOut.toByteArray()), "deflate")) {
+            assertEquals(new String(data, StandardCharsets.UTF_8), new String(InputStreamUtil.getBytes(in), StandardCharsets.UTF_8));
+        }
+
+        final ByteArrayOutputStream gzipDeflateOut = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipDeflateOut)) {
+            out.write(deflateOut.toByteArray());
+        }
+        try (InputStream in =
+                httpClient.createDecodingInputStream(new ByteArrayInputStream(gzipDeflateOut.toByteArray()), "deflate, gzip")) {
+            assertEquals(new String(data, StandardCharsets.UTF_8), new String(InputStreamUtil.getBytes(in), StandardCharsets.UTF_8));
+        }
+
+        try (InputStream in = httpClient.createDecodingInputStream(new ByteArrayInputStream(new byte[0]), "gzip")) {
+            assertEquals(-1, in.read());
+        }
+
+        final InputStream plain = new ByteArrayInputStream(data);
+        assertSame(plain, httpClient.createDecodingInputStream(plain, null));
+        assertSame(plain, httpClient.createDecodingInputStream(plain, "compress"));
+    }
+
+    public void test_createDecodingInputStream_br() throws Exception {
+        try (InputStream in = httpClient.createDecodingInputStream(new ByteArrayInputStream(BROTLI_DATA), "br")) {
+            final byte[] data = InputStreamUtil.getBytes(in);
+            assertEquals(2001, data.length);
+            for (final byte b : data) {
+                assertEquals('a', b);
+            }
+        }
+    }
+
+    public void test_doGet_gzip() throws Exception {
+        final byte[] data = new byte[100000];
+        final byte[] gzipData = gzip(data);
+        final Server server = createContentEncodingServer(gzipData, "gzip");
+        server.start();
+
+        final CountingHcHttpClient client = createCountingHttpClient(1024 * 1024);
+        try {
+            final ResponseData responseData = client.doGet("http://localhost:7070/test.html");
+            assertEquals(200, responseData.getHttpStatusCode());
+            assertEquals("gzip", responseData.getContentEncoding());
+            // Content-Length header is the size of the encoded body
+            assertEquals(gzipData.length, responseData.getEncodedContentLength());
+            assertEquals(data.length, responseData.getContentLength());
+            assertEquals(data.length, InputStreamUtil.getBytes(responseData.getResponseBody()).length);
+        } finally {
+            client.destroy();
+            server.stop();
+        }
+    }
+
+    public void test_doGet_gzipOverMaxLength() throws Exception {
+        final byte[] data = new byte[10 * 1024 * 1024];
+        final byte[] gzipData = gzip(data);
+        final Server server = createContentEncodingServer(gzipData, "gzip");
+        server.start();
+
+        final long maxLength = 1024 * 1024;
+        final CountingHcHttpClient client = createCountingHttpClient(maxLength);
+        try {
+            client.doGet("http://localhost:7070/test.html");
+            fail();
+        } catch (final MaxLengthExceededException e) {
+            // a decoded body is read just over the limit
+            assertTrue(client.decodedStream.getByteCount() > maxLength);
+            assertTrue(client.decodedStream.getByteCount() < data.length);
+            // the rest of the encoded body is not read
+            assertTrue(client.encodedStream.getByteCount() < gzipData.length);
+            assertTrue(client.encodedStream.getByteCount() * 100 < client.decodedStream.getByteCount());
+        } finally {
+            client.destroy();
+            server.stop();
+        }
+    }
+
+    private CountingHcHttpClient createCountingHttpClient(final long maxLength) {
+        final StandardCrawlerContainer container = new StandardCrawlerContainer()
+                .singleton("mimeTypeHelper", MimeTypeHelperImpl.class)//
+                .singleton("dataHelper", MemoryDataHelper.class)//
+                .singleton("robotsTxtHelper", RobotsTxtHelper.class)//
+                .<ContentLengthHelper> singleton("contentLengthHelper", ContentLengthHelper.class, helper -> {
+                    helper.setDefaultMaxLength(maxLength);
+                })//
+                .singleton("httpClient", CountingHcHttpClient.class);
+        return container.getComponent("httpClient");
+    }
+
+    private static byte[] gzip(final byte[] data) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(baos)) {
+            out.write(data);
+        }
+        return baos.toByteArray();
+    }
+
+    private static Server createContentEncodingServer(final byte[] body, final String contentEncoding) {
+        final Server server = new Server(7070);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(final String target, final HttpServletRequest request, final HttpServletResponse response,
+                    final int dispatch) throws IOException {
+                if (!"/test.html".equals(target)) {
+                    response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                } else {
+                    response.setContentType("text/html");
+                    response.setHeader("Content-Encoding", contentEncoding);
+                    response.setContentLength(body.length);
+                    response.getOutputStream().write(body);
+                }
+                ((Request) request).setHandled(true);
+            }
+        });
+        return server;
+    }
+
+    public static class CountingHcHttpClient extends HcHttpClient {
+        protected CountingInputStream encodedStream;
+
+        protected CountingInputStream decodedStream;
+
+        @Override
+        protected InputStream createDecodingInputStream(final InputStream inputStream, final String contentEncoding) throws IOException {
+            encodedStream = (CountingInputStream) inputStream;
+            decodedStream = new CountingInputStream(super.createDecodingInputStream(inputStream, contentEncoding));
+            return decodedStream;
+        }
+    }
+
+    public void test_parseCharSet() {
+        assertNull(httpClient.parseCharSet(null));
+        assertNull(httpClient.parseCharSet("text/html"));
+        assertEquals("Shift_JIS", httpClient.parseCharSet("text/html; charset=Shift_JIS"));
+        assertEquals("UTF-8", httpClient.parseCharSet("text/html;CHARSET=\"UTF-8\""));
+        assertNull(httpClient.parseCharSet("text/html; charset=unknown-charset"));
+        assertNull(httpClient.parseCharSet("text/html; charset=gzip"));
+    }
+
     public void test_doGet_accessTimeoutTarget() {
         HcHttpClient client = new HcHttpClient() {
             @Override
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.client.http;
+
+import java.net.Authenticator.RequestorType;
+import java.net.CookieManager;
+import java.net.HttpCookie;
+import java.net.PasswordAuthentication;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.codelibs.fess.crawler.builder.RequestDataBuilder;
+import org.codelibs.fess.crawler.client.http.form.FormScheme;
+import org.codelibs.fess.crawler.client.http.impl.AuthenticationImpl;
+import org.codelibs.fess.crawler.container.StandardCrawlerContainer;
+import org.codelibs.fess.crawler.entity.ResponseData;
+import org.codelibs.fess.crawler.exception.CrawlerSystemException;
+import org.codelibs.fess.crawler.exception.CrawlingAccessException;
+import org.codelibs.fess.crawler.helper.ContentLengthHelper;
+import org.codelibs.fess.crawler.helper.MemoryDataHelper;
+import org.codelibs.fess.crawler.helper.RobotsTxtHelper;
+import org.codelibs.fess.crawler.helper.impl.MimeTypeHelperImpl;
+import org.codelibs.fess.crawler.util.CrawlerWebServer;
+import org.dbflute.utflute.core.PlainTestCase;
+
+/**
+ * @author shinsuke
+ *
+ */
+public class JdkHttpClientTest extends PlainTestCase {
+    public JdkHttpClient httpClient;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        StandardCrawlerContainer container = new StandardCrawlerContainer()
+                .singleton("mimeTypeHelper", MimeTypeHelperImpl.class)//
+                .singleton("dataHelper", MemoryDataHelper.class)//
+                .singleton("robotsTxtHelper", RobotsTxtHelper.class)//
+                .singleton("contentLengthHelper", ContentLengthHelper.class)//
+                .<JdkHttpClient> singleton("httpClient", JdkHttpClient.class, client -> {
+                    client.setMaxInFlightRequests(5);
+                });
+        httpClient = container.getComponent("httpClient");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        httpClient.destroy();
+        super.tearDown();
+    }
+
+    public void test_execute() {
+        final CrawlerWebServer server = new CrawlerWebServer(7070);
+        server.start();
+
+        final String url = "http://localhost:7070/";
+        try {
+            final ResponseData responseData = httpClient.execute(RequestDataBuilder.newRequestData().get().url(url).build());
+            assertEquals(200, responseData.getHttpStatusCode());
+            assertEquals("GET", responseData.getMethod());
+            assertTrue(responseData.getContentLength() > 0);
+            assertTrue(responseData.hasResponseBody());
+        } finally {
+            server.stop();
+        }
+    }
+
+    public void test_execute_head() {
+        final CrawlerWebServer server = new CrawlerWebServer(7070);
+        server.start();
+
+        final String url = "http://localhost:7070/";
+        try {
+            final ResponseData responseData = httpClient.execute(RequestDataBuilder.newRequestData().head().url(url).build());
+            assertEquals(200, responseData.getHttpStatusCode());
+            assertEquals("HEAD", responseData.getMethod());
+            assertNotNull(responseData.getLastModified());
+        } finally {
+            server.stop();
+        }
+    }
+
+    public void test_executeAsync() throws Exception {
+        final CrawlerWebServer server = new CrawlerWebServer(7070);
+        server.start();
+
+        final String url = "http://localhost:7070/";
+        try {
+            final List<CompletableFuture<ResponseData>> futureList = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futureList.add(httpClient.executeAsync(RequestDataBuilder.newRequestData().get().url(url).build()));
+            }
+            for (final CompletableFuture<ResponseData> future : futureList) {
+                try (final ResponseData responseData = future.join()) {
+                    assertEquals(200, responseData.getHttpStatusCode());
+                }
+            }
+            assertEquals(5, httpClient.getAvailableRequests());
+        } finally {
+            server.stop();
+        }
+    }
+
+    public void test_executeAsync_error() {
+        final CompletableFuture<ResponseData> future =
+                httpClient.executeAsync(RequestDataBuilder.newRequestData().get().url("http://localhost:7071/").build());
+        try {
+            future.join();
+            fail();
+        } catch (final CompletionException e) {
+            assertTrue(e.getCause() instanceof CrawlingAccessException);
+        }
+        assertEquals(5, httpClient.getAvailableRequests());
+    }
+
+    public void test_executeAsync_timeout() throws Exception {
+        // a server which never responds
+        try (final ServerSocket serverSocket = new ServerSocket(0)) {
+            httpClient.setAccessTimeout(1);
+            final CompletableFuture<ResponseData> future = httpClient.executeAsync(
+                    RequestDataBuilder.newRequestData().get().url("http://localhost:" + serverSocket.getLocalPort() + "/").build());
+            try {
+                future.join();
+                fail();
+            } catch (final CompletionException e) {
+                assertTrue(e.getCause() instanceof CrawlingAccessException);
+            }
+            // the cancelled exchange returns the permit
+            assertEquals(5, httpClient.getAvailableRequests());
+        }
+    }
+
+    public void test_init_formScheme() {
+        final Map<String, Object> paramMap = new HashMap<>();
+        paramMap.put(HcHttpClient.BASIC_AUTHENTICATIONS_PROPERTY, new Authentication[] { new AuthenticationImpl(AuthScope.ANY,
+                new UsernamePasswordCredentials("user", "pass"), new FormScheme(new HashMap<String, String>())) });
+        final JdkHttpClient client = new JdkHttpClient();
+        client.setInitParameterMap(paramMap);
+        try {
+            client.init();
+            fail();
+        } catch (final CrawlerSystemException e) {
+            assertTrue(e.getMessage().contains("Form authentication"));
+        } finally {
+            client.destroy();
+        }
+    }
+
+    public void test_buildAuthenticator() {
+        final Map<String, Object> paramMap = new HashMap<>();
+        paramMap.put(HcHttpClient.BASIC_AUTHENTICATIONS_PROPERTY, new Authentication[] {
+                new AuthenticationImpl(new AuthScope("localhost", 7070), new UsernamePasswordCredentials("user", "pass")) });
+        final JdkHttpClient client = new JdkHttpClient();
+        client.setInitParameterMap(paramMap);
+        client.init();
+        try {
+            final PasswordAuthentication auth = client.buildAuthenticator().requestPasswordAuthenticationInstance("localhost", null, 7070,
+                    "http", "realm", "Basic", null, RequestorType.SERVER);
+            assertEquals("user", auth.getUserName());
+            assertEquals("pass", new String(auth.getPassword()));
+            assertNull(client.buildAuthenticator().requestPasswordAuthenticationInstance("example.com", null, 80, "http", "realm",
+                    "Basic", null, RequestorType.SERVER));
+        } finally {
+            client.destroy();
+        }
+    }
+
+    public void test_buildCookieHandler() {
+        final BasicClientCookie cookie = new BasicClientCookie("session", "abc");
+        cookie.setDomain("localhost");
+        cookie.setPath("/");
+        httpClient.cookieStore.addCookie(cookie);
+
+        final CookieManager cookieManager = (CookieManager) httpClient.buildCookieHandler();
+        final List<HttpCookie> cookieList = cookieManager.getCookieStore().get(URI.create("http://localhost:7070/"));
+        assertEquals(1, cookieList.size());
+        assertEquals("session", cookieList.get(0).getName());
+        assertEquals("abc", cookieList.get(0).getValue());
+    }
+}
@@ -184,4 +184,32 @@ public class UrlFilterImplTest extends PlainTestCase {
         assertEquals(0, urlFilter.cachedIncludeSet.size());
         assertEquals(0, urlFilter.cachedExcludeSet.size());
     }
+
+    public void test_addRobotsTxtRules() {
+        urlFilter.init("id1");
+        assertTrue(urlFilter.addRobotsTxtRules("http://example.com", new String[] { "/admin/" }, new String[0]));
+        assertFalse(urlFilter.match("http://example.com/admin/"));
+        assertTrue(urlFilter.match("http://example.com/index.html"));
+        assertTrue(urlFilter.match("http://www.example.com/admin/"));
+        assertEquals(0, dataHelper.getExcludeUrlPatternList("id1").size());
+    }
+
+    public void test_addRobotsTxtRules_persistent() {
+        final StandardCrawlerContainer container = new StandardCrawlerContainer()
+                .singleton("dataHelper", MemoryDataHelper.class)//
+                .singleton("urlFilterService", PersistentUrlFilterServiceImpl.class)//
+                .singleton("urlFilter", UrlFilterImpl.class);
+        final UrlFilterImpl urlFilter = container.getComponent("urlFilter");
+        urlFilter.init("id1");
+        // rules are added as url patterns by a caller
+        assertFalse(urlFilter.addRobotsTxtRules("http://example.com", new String[] { "/admin/" }, new String[0]));
+        assertTrue(urlFilter.match("http://example.com/admin/"));
+    }
+
+    public static class PersistentUrlFilterServiceImpl extends UrlFilterServiceImpl {
+        @Override
+        public boolean isPersistent() {
+            return true;
+        }
+    }
 }
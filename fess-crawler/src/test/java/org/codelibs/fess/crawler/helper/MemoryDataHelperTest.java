@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import org.codelibs.fess.crawler.container.StandardCrawlerContainer;
+import org.codelibs.fess.crawler.entity.AccessResultImpl;
+import org.codelibs.fess.crawler.entity.UrlQueueImpl;
+import org.codelibs.fess.crawler.service.impl.UrlQueueServiceImpl;
+import org.dbflute.utflute.core.PlainTestCase;
+
+public class MemoryDataHelperTest extends PlainTestCase {
+    private static final int NUM_OF_URLS = 20000;
+
+    public void test_concurrentSessions() throws Exception {
+        for (final int numOfThread : new int[] { 1, 2, 4, 8 }) {
+            final MemoryDataHelper dataHelper = new MemoryDataHelper();
+            final UrlQueueServiceImpl urlQueueService = createUrlQueueService(dataHelper);
+            final long time = runCrawlers(numOfThread, i -> "session" + i, urlQueueService, dataHelper);
+            for (int i = 0; i < numOfThread; i++) {
+                assertEquals(NUM_OF_URLS, dataHelper.getAccessResultMap("session" + i).size());
+                assertNull(urlQueueService.poll("session" + i));
+            }
+            log("sessions: threads=" + numOfThread + ", urls=" + NUM_OF_URLS * numOfThread + ", time=" + time + "ms, throughput="
+                    + NUM_OF_URLS * numOfThread * 1000L / Math.max(time, 1) + "/s");
+        }
+    }
+
+    public void test_sharedSession() throws Exception {
+        for (final int numOfThread : new int[] { 1, 2, 4, 8 }) {
+            final MemoryDataHelper dataHelper = new MemoryDataHelper();
+            final UrlQueueServiceImpl urlQueueService = createUrlQueueService(dataHelper);
+            final long time = runCrawlers(numOfThread, i -> "session", urlQueueService, dataHelper);
+            assertEquals(NUM_OF_URLS, dataHelper.getAccessResultMap("session").size());
+            assertNull(urlQueueService.poll("session"));
+            log("shared: threads=" + numOfThread + ", urls=" + NUM_OF_URLS + ", time=" + time + "ms, throughput="
+                    + NUM_OF_URLS * 1000L / Math.max(time, 1) + "/s");
+        }
+    }
+
+    private UrlQueueServiceImpl createUrlQueueService(final MemoryDataHelper dataHelper) {
+        final StandardCrawlerContainer container = new StandardCrawlerContainer()//
+                .singleton("dataHelper", dataHelper)//
+                .singleton("urlQueueService", UrlQueueServiceImpl.class);
+        return container.getComponent("urlQueueService");
+    }
+
+    private long runCrawlers(final int numOfThread, final IntFunction<String> sessionIdFunc,
+            final UrlQueueServiceImpl urlQueueService, final MemoryDataHelper dataHelper) throws Exception {
+        // every page links to the next pages, so each url is offered several times
+        for (int i = 0; i < numOfThread; i++) {
+            urlQueueService.add(sessionIdFunc.apply(i), "http://example.com/0");
+        }
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final AtomicInteger errorCount = new AtomicInteger();
+        final Thread[] threads = new Thread[numOfThread];
+        for (int i = 0; i < numOfThread; i++) {
+            final String sessionId = sessionIdFunc.apply(i);
+            threads[i] = new Thread(() -> {
+                try {
+                    startLatch.await();
+                    int emptyCount = 0;
+                    while (emptyCount < 1000) {
+                        final UrlQueueImpl<Long> urlQueue = urlQueueService.poll(sessionId);
+                        if (urlQueue == null) {
+                            emptyCount++;
+                            Thread.yield();
+                            continue;
+                        }
+                        emptyCount = 0;
+                        final AccessResultImpl<Long> accessResult = new AccessResultImpl<>();
+                        accessResult.setSessionId(sessionId);
+                        accessResult.setUrl(urlQueue.getUrl());
+                        dataHelper.getAccessResultMap(sessionId).putIfAbsent(urlQueue.getUrl(), accessResult);
+
+                        final int page = Integer.parseInt(urlQueue.getUrl().substring("http://example.com/".length()));
+                        final List<UrlQueueImpl<Long>> childList = new ArrayList<>();
+                        for (int j = 1; j <= 3; j++) {
+                            if (page + j < NUM_OF_URLS) {
+                                final UrlQueueImpl<Long> child = new UrlQueueImpl<>();
+                                child.setSessionId(sessionId);
+                                child.setUrl("http://example.com/" + (page + j));
+                                childList.add(child);
+                            }
+                        }
+                        urlQueueService.offerAll(sessionId, childList);
+                    }
+                } catch (final Exception e) {
+                    errorCount.incrementAndGet();
+                }
+            });
+            threads[i].start();
+        }
+        final long startTime = System.currentTimeMillis();
+        startLatch.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, errorCount.get());
+        return System.currentTimeMillis() - startTime;
+    }
+}
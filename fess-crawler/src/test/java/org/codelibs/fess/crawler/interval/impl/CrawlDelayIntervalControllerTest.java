@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.interval.impl;
+
+import org.codelibs.fess.crawler.entity.UrlQueueImpl;
+import org.codelibs.fess.crawler.util.CrawlingParameterUtil;
+import org.dbflute.utflute.core.PlainTestCase;
+
+/**
+ * @author shinsuke
+ *
+ */
+public class CrawlDelayIntervalControllerTest extends PlainTestCase {
+
+    public void test_getDelayMillisBeforeProcessing() {
+        final CrawlDelayIntervalController controller = new CrawlDelayIntervalController();
+        controller.delayMillisBeforeProcessing = 100L;
+        controller.setMaxCrawlDelayMillis(5000L);
+
+        assertEquals(100L, controller.getDelayMillisBeforeProcessing("example.com"));
+
+        controller.addCrawlDelay("http://example.com:8080", 2000L);
+        assertEquals(2000L, controller.getDelayMillisBeforeProcessing("example.com"));
+        assertEquals(100L, controller.getDelayMillisBeforeProcessing("example.org"));
+
+        controller.addCrawlDelay("https://example.org", 10000L);
+        assertEquals(5000L, controller.getDelayMillisBeforeProcessing("example.org"));
+
+        controller.addCrawlDelay("http://example.net", 50L);
+        assertEquals(100L, controller.getDelayMillisBeforeProcessing("example.net"));
+
+        controller.addCrawlDelay("http://example.com", 0L);
+        assertEquals(100L, controller.getDelayMillisBeforeProcessing("example.com"));
+
+        controller.addCrawlDelay(null, 1000L);
+        controller.addCrawlDelay("invalid", 1000L);
+    }
+
+    public void test_delayBeforeProcessing() {
+        final CrawlDelayIntervalController controller = new CrawlDelayIntervalController();
+        controller.delayMillisBeforeProcessing = 0L;
+        controller.addCrawlDelay("http://slow.example.com", 300L);
+
+        final UrlQueueImpl<Long> fastQueue = new UrlQueueImpl<>();
+        fastQueue.setUrl("http://fast.example.com/");
+        final UrlQueueImpl<Long> slowQueue = new UrlQueueImpl<>();
+        slowQueue.setUrl("http://slow.example.com/");
+
+        try {
+            CrawlingParameterUtil.setUrlQueue(fastQueue);
+            long time = System.currentTimeMillis();
+            for (int i = 0; i < 3; i++) {
+                controller.delayBeforeProcessing();
+            }
+            assertTrue(System.currentTimeMillis() - time < 300L);
+
+            CrawlingParameterUtil.setUrlQueue(slowQueue);
+            time = System.currentTimeMillis();
+            for (int i = 0; i < 3; i++) {
+                controller.delayBeforeProcessing();
+            }
+            assertTrue(System.currentTimeMillis() - time >= 600L);
+        } finally {
+            CrawlingParameterUtil.setUrlQueue(null);
+        }
+    }
+
+    public void test_isReady() {
+        final CrawlDelayIntervalController controller = new CrawlDelayIntervalController();
+        controller.delayMillisBeforeProcessing = 0L;
+        controller.addCrawlDelay("http://slow.example.com", 10000L);
+
+        final UrlQueueImpl<Long> urlQueue = new UrlQueueImpl<>();
+        urlQueue.setUrl("http://slow.example.com/");
+        try {
+            assertTrue(controller.isReady("http://slow.example.com/a"));
+            CrawlingParameterUtil.setUrlQueue(urlQueue);
+            controller.delayBeforeProcessing();
+            assertFalse(controller.isReady("http://slow.example.com/a"));
+            assertTrue(controller.isReady("http://fast.example.com/a"));
+            assertTrue(controller.isReady("file:/tmp/a"));
+        } finally {
+            CrawlingParameterUtil.setUrlQueue(null);
+        }
+    }
+}
@@ -15,9 +15,15 @@
  */
 package org.codelibs.fess.crawler.service.impl;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.codelibs.fess.crawler.container.StandardCrawlerContainer;
 import org.codelibs.fess.crawler.entity.AccessResult;
 import org.codelibs.fess.crawler.entity.AccessResultImpl;
+import org.codelibs.fess.crawler.exception.CrawlerSystemException;
 import org.codelibs.fess.crawler.helper.MemoryDataHelper;
 import org.codelibs.fess.crawler.service.DataService;
 import org.dbflute.utflute.core.PlainTestCase;
@@ -70,4 +76,44 @@ public class DataServiceImplTest extends PlainTestCase {
         final AccessResult accessResult4 = dataService.getAccessResult("id1", "http://www.id1.com/");
         assertNull(accessResult4);
     }
+
+    public void test_store_concurrent() throws Exception {
+        final int numOfThread = 16;
+        final int numOfUrl = 1000;
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final AtomicInteger duplicateCount = new AtomicInteger();
+        final Set<Object> idSet = ConcurrentHashMap.newKeySet();
+        final Thread[] threads = new Thread[numOfThread];
+        for (int i = 0; i < numOfThread; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    startLatch.await();
+                } catch (final InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < numOfUrl; j++) {
+                    final AccessResult accessResult = new AccessResultImpl();
+                    accessResult.setSessionId("id2");
+                    accessResult.setUrl("http://www.id2.com/" + j);
+                    try {
+                        dataService.store(accessResult);
+                        idSet.add(accessResult.getId());
+                    } catch (final CrawlerSystemException e) {
+                        duplicateCount.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        startLatch.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(numOfUrl, dataService.getCount("id2"));
+        assertEquals(numOfUrl, idSet.size());
+        assertEquals(numOfUrl * (numOfThread - 1), duplicateCount.get());
+
+        dataService.delete("id2");
+    }
 }
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codelibs.fess.crawler.container.StandardCrawlerContainer;
+import org.codelibs.fess.crawler.entity.AccessResultImpl;
+import org.codelibs.fess.crawler.entity.UrlQueueImpl;
+import org.codelibs.fess.crawler.helper.MemoryDataHelper;
+import org.dbflute.utflute.core.PlainTestCase;
+
+public class HostPartitionedUrlQueueServiceImplTest extends PlainTestCase {
+    public HostPartitionedUrlQueueServiceImpl urlQueueService;
+
+    public DataServiceImpl dataService;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        StandardCrawlerContainer container = new StandardCrawlerContainer()
+                .singleton("dataHelper", MemoryDataHelper.class)//
+                .singleton("dataService", DataServiceImpl.class)//
+                .singleton("urlQueueService", HostPartitionedUrlQueueServiceImpl.class);
+        urlQueueService = container.getComponent("urlQueueService");
+        dataService = container.getComponent("dataService");
+    }
+
+    public void test_poll_roundRobin() {
+        final List<UrlQueueImpl<Long>> urlQueueList = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            urlQueueList.add(createUrlQueue("id1", "http://big.example.com/" + i));
+        }
+        urlQueueList.add(createUrlQueue("id1", "http://a.example.com/0"));
+        urlQueueList.add(createUrlQueue("id1", "http://a.example.com/1"));
+        urlQueueList.add(createUrlQueue("id1", "http://b.example.com/0"));
+        urlQueueService.offerAll("id1", urlQueueList);
+        assertEquals(8, urlQueueService.size("id1"));
+
+        final List<String> hostList = new ArrayList<>();
+        UrlQueueImpl<Long> urlQueue;
+        while ((urlQueue = urlQueueService.poll("id1")) != null) {
+            hostList.add(urlQueue.getUrl().substring(0, urlQueue.getUrl().lastIndexOf('/')));
+        }
+        assertEquals(8, hostList.size());
+        // urls of a host are not polled in a row while other hosts have urls
+        assertEquals("http://big.example.com", hostList.get(0));
+        assertEquals("http://a.example.com", hostList.get(1));
+        assertEquals("http://b.example.com", hostList.get(2));
+        assertTrue(hostList.subList(0, 5).contains("http://a.example.com"));
+        assertEquals(0, urlQueueService.size("id1"));
+    }
+
+    public void test_poll_hostInterval() {
+        urlQueueService.setHostIntervalMillis(60000L);
+        final List<UrlQueueImpl<Long>> urlQueueList = new ArrayList<>();
+        urlQueueList.add(createUrlQueue("id1", "http://a.example.com/0"));
+        urlQueueList.add(createUrlQueue("id1", "http://a.example.com/1"));
+        urlQueueList.add(createUrlQueue("id1", "http://b.example.com/0"));
+        urlQueueList.add(createUrlQueue("id1", "http://b.example.com/1"));
+        urlQueueService.offerAll("id1", urlQueueList);
+
+        assertEquals("http://a.example.com/0", urlQueueService.poll("id1").getUrl());
+        assertEquals("http://b.example.com/0", urlQueueService.poll("id1").getUrl());
+        urlQueueService.offerAll("id1", createUrlQueueList("id1", "http://c.example.com/0"));
+        assertEquals("http://c.example.com/0", urlQueueService.poll("id1").getUrl());
+        // no ready host, but the queue is not empty
+        assertNull(urlQueueService.poll("id1"));
+        assertEquals(0, urlQueueService.pollBatch("id1", 2).size());
+        assertTrue(urlQueueService.hasWaitingUrls("id1"));
+        assertEquals(2, urlQueueService.size("id1"));
+
+        final long now = System.currentTimeMillis() + 60000L;
+        final HostPartitionedUrlQueueServiceImpl.Frontier frontier = urlQueueService.getFrontier("id1");
+        final List<UrlQueueImpl<Long>> polledList = frontier.pollBatch(now, 3);
+        assertEquals(2, polledList.size());
+        assertEquals("http://a.example.com/1", polledList.get(0).getUrl());
+        assertEquals("http://b.example.com/1", polledList.get(1).getUrl());
+        assertNull(frontier.poll(now, null));
+        assertFalse(urlQueueService.hasWaitingUrls("id1"));
+    }
+
+    public void test_poll_drainedHost() {
+        urlQueueService.setHostIntervalMillis(60000L);
+        final HostPartitionedUrlQueueServiceImpl.Frontier frontier = urlQueueService.getFrontier("id1");
+        final long now = System.currentTimeMillis();
+        urlQueueService.offerAll("id1", createUrlQueueList("id1", "http://a.example.com/0"));
+        assertEquals("http://a.example.com/0", frontier.poll(now, null).getUrl());
+        // a drained host is removed
+        assertTrue(frontier.hostQueueMap.isEmpty());
+        assertEquals(1, frontier.readyTimeMap.size());
+
+        // the interval is kept for a url added later
+        urlQueueService.offerAll("id1", createUrlQueueList("id1", "http://a.example.com/1"));
+        assertTrue(frontier.readyTimeMap.isEmpty());
+        assertNull(frontier.poll(now + 1000L, null));
+        assertEquals("http://a.example.com/1", frontier.poll(now + 60000L, null).getUrl());
+        assertEquals(1, frontier.readyTimeMap.size());
+
+        // the ready time expires
+        assertNull(frontier.poll(now + 120000L, null));
+        assertTrue(frontier.hostQueueMap.isEmpty());
+        assertTrue(frontier.readyTimeMap.isEmpty());
+    }
+
+    public void test_poll_preferred() {
+        final List<UrlQueueImpl<Long>> urlQueueList = new ArrayList<>();
+        urlQueueList.add(createUrlQueue("id1", "http://busy.example.com/0"));
+        urlQueueList.add(createUrlQueue("id1", "http://busy.example.com/1"));
+        urlQueueList.add(createUrlQueue("id1", "http://www.example.com/0"));
+        urlQueueService.offerAll("id1", urlQueueList);
+
+        assertEquals("http://www.example.com/0",
+                urlQueueService.poll("id1", uq -> !uq.getUrl().startsWith("http://busy.")).getUrl());
+        assertNull(urlQueueService.poll("id1", uq -> !uq.getUrl().startsWith("http://busy.")));
+        assertEquals("http://busy.example.com/0", urlQueueService.poll("id1").getUrl());
+        assertEquals("http://busy.example.com/1", urlQueueService.poll("id1").getUrl());
+        assertNull(urlQueueService.poll("id1"));
+    }
+
+    public void test_pollBatch() {
+        final List<UrlQueueImpl<Long>> urlQueueList = new ArrayList<>();
+        urlQueueList.add(createUrlQueue("id1", "http://a.example.com/0"));
+        urlQueueList.add(createUrlQueue("id1", "http://a.example.com/1"));
+        urlQueueList.add(createUrlQueue("id1", "http://b.example.com/0"));
+        urlQueueService.offerAll("id1", urlQueueList);
+
+        final List<UrlQueueImpl<Long>> polledList = urlQueueService.pollBatch("id1", 2);
+        assertEquals(2, polledList.size());
+        assertEquals("http://a.example.com/0", polledList.get(0).getUrl());
+        assertEquals("http://b.example.com/0", polledList.get(1).getUrl());
+        assertTrue(urlQueueService.visited(polledList.get(0)));
+        assertEquals(1, urlQueueService.size("id1"));
+
+        // a child url points at a prefetched url
+        urlQueueService.offerAll("id1", createUrlQueueList("id1", "http://b.example.com/0"));
+        assertEquals(1, urlQueueService.size("id1"));
+        urlQueueService.release("id1", polledList.get(0));
+        assertFalse(urlQueueService.visited(polledList.get(0)));
+
+        assertEquals(1, urlQueueService.pollBatch("id1", 2).size());
+        assertEquals(0, urlQueueService.pollBatch("id1", 2).size());
+        assertEquals(0, urlQueueService.pollBatch("id2", 2).size());
+    }
+
+    public void test_visited() {
+        final UrlQueueImpl<Long> urlQueue = createUrlQueue("id1", "http://www.example.com/");
+        assertFalse(urlQueueService.visited(urlQueue));
+
+        urlQueueService.offerAll("id1", createUrlQueueList("id1", "http://www.example.com/"));
+        assertTrue(urlQueueService.visited(urlQueue));
+        urlQueueService.offerAll("id1", createUrlQueueList("id1", "http://www.example.com/"));
+        assertEquals(1, urlQueueService.size("id1"));
+
+        assertNotNull(urlQueueService.poll("id1"));
+        assertFalse(urlQueueService.visited(urlQueue));
+
+        final AccessResultImpl<Long> accessResult = new AccessResultImpl<>();
+        accessResult.setSessionId("id1");
+        accessResult.setUrl("http://www.example.com/");
+        dataService.store(accessResult);
+        assertTrue(urlQueueService.visited(urlQueue));
+    }
+
+    public void test_updateSessionId() {
+        urlQueueService.offerAll("id1", createUrlQueueList("id1", "http://www.example.com/"));
+        urlQueueService.updateSessionId("id1", "id2");
+
+        assertNull(urlQueueService.poll("id1"));
+        assertTrue(urlQueueService.visited(createUrlQueue("id2", "http://www.example.com/")));
+        assertEquals("http://www.example.com/", urlQueueService.poll("id2").getUrl());
+        assertNull(urlQueueService.poll("id2"));
+    }
+
+    public void test_delete() {
+        urlQueueService.add("id1", "http://www.example.com/");
+        urlQueueService.add("id2", "http://www.example.com/");
+        urlQueueService.delete("id1");
+        assertNull(urlQueueService.poll("id1"));
+        assertNotNull(urlQueueService.poll("id2"));
+
+        urlQueueService.add("id2", "http://www.example.com/");
+        urlQueueService.deleteAll();
+        assertNull(urlQueueService.poll("id2"));
+    }
+
+    private List<UrlQueueImpl<Long>> createUrlQueueList(final String sessionId, final String url) {
+        final List<UrlQueueImpl<Long>> urlQueueList = new ArrayList<>();
+        urlQueueList.add(createUrlQueue(sessionId, url));
+        return urlQueueList;
+    }
+
+    private UrlQueueImpl<Long> createUrlQueue(final String sessionId, final String url) {
+        final UrlQueueImpl<Long> urlQueue = new UrlQueueImpl<>();
+        urlQueue.setSessionId(sessionId);
+        urlQueue.setUrl(url);
+        return urlQueue;
+    }
+}
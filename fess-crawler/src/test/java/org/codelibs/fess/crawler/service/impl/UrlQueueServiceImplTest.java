@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codelibs.fess.crawler.container.StandardCrawlerContainer;
+import org.codelibs.fess.crawler.entity.AccessResultImpl;
+import org.codelibs.fess.crawler.entity.UrlQueueImpl;
+import org.codelibs.fess.crawler.helper.MemoryDataHelper;
+import org.dbflute.utflute.core.PlainTestCase;
+
+public class UrlQueueServiceImplTest extends PlainTestCase {
+    public UrlQueueServiceImpl urlQueueService;
+
+    public DataServiceImpl dataService;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        StandardCrawlerContainer container = new StandardCrawlerContainer()
+                .singleton("dataHelper", MemoryDataHelper.class)//
+                .singleton("dataService", DataServiceImpl.class)//
+                .singleton("urlQueueService", UrlQueueServiceImpl.class);
+        urlQueueService = container.getComponent("urlQueueService");
+        dataService = container.getComponent("dataService");
+    }
+
+    public void test_offerAll_duplicated() {
+        final List<UrlQueueImpl<Long>> urlQueueList = new ArrayList<>();
+        urlQueueList.add(createUrlQueue("id1", "http://www.example.com/"));
+        urlQueueList.add(createUrlQueue("id1", "http://www.example.com/a.html"));
+        urlQueueList.add(createUrlQueue("id1", "http://www.example.com/"));
+        urlQueueService.offerAll("id1", urlQueueList);
+
+        final List<UrlQueueImpl<Long>> urlQueueList2 = new ArrayList<>();
+        urlQueueList2.add(createUrlQueue("id1", "http://www.example.com/a.html"));
+        urlQueueList2.add(createUrlQueue("id1", "http://www.example.com/b.html"));
+        urlQueueService.offerAll("id1", urlQueueList2);
+
+        assertEquals("http://www.example.com/", urlQueueService.poll("id1").getUrl());
+        assertEquals("http://www.example.com/a.html", urlQueueService.poll("id1").getUrl());
+        assertEquals("http://www.example.com/b.html", urlQueueService.poll("id1").getUrl());
+        assertNull(urlQueueService.poll("id1"));
+    }
+
+    public void test_visited() {
+        final UrlQueueImpl<Long> urlQueue = createUrlQueue("id1", "http://www.example.com/");
+        assertFalse(urlQueueService.visited(urlQueue));
+
+        final List<UrlQueueImpl<Long>> urlQueueList = new ArrayList<>();
+        urlQueueList.add(urlQueue);
+        urlQueueService.offerAll("id1", urlQueueList);
+        assertTrue(urlQueueService.visited(urlQueue));
+
+        assertNotNull(urlQueueService.poll("id1"));
+        assertFalse(urlQueueService.visited(urlQueue));
+
+        final AccessResultImpl<Long> accessResult = new AccessResultImpl<>();
+        accessResult.setSessionId("id1");
+        accessResult.setUrl("http://www.example.com/");
+        dataService.store(accessResult);
+        assertTrue(urlQueueService.visited(urlQueue));
+
+        urlQueueService.offerAll("id1", urlQueueList);
+        assertNull(urlQueueService.poll("id1"));
+    }
+
+    public void test_poll_preferred() {
+        final List<UrlQueueImpl<Long>> urlQueueList = new ArrayList<>();
+        urlQueueList.add(createUrlQueue("id1", "http://busy.example.com/1"));
+        urlQueueList.add(createUrlQueue("id1", "http://busy.example.com/2"));
+        urlQueueList.add(createUrlQueue("id1", "http://www.example.com/1"));
+        urlQueueService.offerAll("id1", urlQueueList);
+
+        assertEquals("http://www.example.com/1",
+                urlQueueService.poll("id1", uq -> !uq.getUrl().startsWith("http://busy.")).getUrl());
+        assertFalse(urlQueueService.visited(createUrlQueue("id1", "http://www.example.com/1")));
+        assertNull(urlQueueService.poll("id1", uq -> !uq.getUrl().startsWith("http://busy.")));
+        assertEquals("http://busy.example.com/1", urlQueueService.poll("id1", uq -> true).getUrl());
+        assertEquals("http://busy.example.com/2", urlQueueService.poll("id1", uq -> true).getUrl());
+        assertNull(urlQueueService.poll("id1", uq -> true));
+    }
+
+    public void test_pollBatch() {
+        final List<UrlQueueImpl<Long>> urlQueueList = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            urlQueueList.add(createUrlQueue("id1", "http://www.example.com/" + i));
+        }
+        urlQueueService.offerAll("id1", urlQueueList);
+
+        List<UrlQueueImpl<Long>> polledList = urlQueueService.pollBatch("id1", 3);
+        assertEquals(3, polledList.size());
+        assertEquals("http://www.example.com/0", polledList.get(0).getUrl());
+        assertEquals("http://www.example.com/2", polledList.get(2).getUrl());
+        // polled urls are not queued again until they are released
+        assertTrue(urlQueueService.visited(polledList.get(0)));
+        urlQueueService.release("id1", polledList.get(0));
+        assertFalse(urlQueueService.visited(polledList.get(0)));
+
+        // restore an entry which is not processed
+        urlQueueService.insert(polledList.get(2));
+        urlQueueService.release("id1", polledList.get(2));
+        assertTrue(urlQueueService.visited(polledList.get(2)));
+
+        polledList = urlQueueService.pollBatch("id1", 3);
+        assertEquals(3, polledList.size());
+        assertEquals("http://www.example.com/3", polledList.get(0).getUrl());
+        assertEquals("http://www.example.com/2", polledList.get(2).getUrl());
+        assertEquals(0, urlQueueService.pollBatch("id1", 3).size());
+    }
+
+    public void test_pollBatch_childUrl() {
+        final List<UrlQueueImpl<Long>> urlQueueList = new ArrayList<>();
+        urlQueueList.add(createUrlQueue("id1", "http://www.example.com/"));
+        urlQueueList.add(createUrlQueue("id1", "http://www.example.com/a.html"));
+        urlQueueService.offerAll("id1", urlQueueList);
+
+        final List<UrlQueueImpl<Long>> polledList = urlQueueService.pollBatch("id1", 2);
+        assertEquals(2, polledList.size());
+
+        // a child url of the first page points at the prefetched page
+        final List<UrlQueueImpl<Long>> childList = new ArrayList<>();
+        childList.add(createUrlQueue("id1", "http://www.example.com/a.html"));
+        urlQueueService.offerAll("id1", childList);
+        assertNull(urlQueueService.poll("id1"));
+
+        final AccessResultImpl<Long> accessResult = new AccessResultImpl<>();
+        accessResult.setSessionId("id1");
+        accessResult.setUrl("http://www.example.com/a.html");
+        dataService.store(accessResult);
+        urlQueueService.release("id1", polledList.get(1));
+        urlQueueService.offerAll("id1", childList);
+        assertNull(urlQueueService.poll("id1"));
+    }
+
+    public void test_updateSessionId() {
+        final List<UrlQueueImpl<Long>> urlQueueList = new ArrayList<>();
+        urlQueueList.add(createUrlQueue("id1", "http://www.example.com/"));
+        urlQueueService.offerAll("id1", urlQueueList);
+
+        urlQueueService.updateSessionId("id1", "id2");
+        assertFalse(urlQueueService.visited(createUrlQueue("id1", "http://www.example.com/")));
+        assertTrue(urlQueueService.visited(createUrlQueue("id2", "http://www.example.com/")));
+        assertEquals("http://www.example.com/", urlQueueService.poll("id2").getUrl());
+        assertNull(urlQueueService.poll("id1"));
+    }
+
+    private UrlQueueImpl<Long> createUrlQueue(final String sessionId, final String url) {
+        final UrlQueueImpl<Long> urlQueue = new UrlQueueImpl<>();
+        urlQueue.setSessionId(sessionId);
+        urlQueue.setMethod("GET");
+        urlQueue.setUrl(url);
+        urlQueue.setDepth(0);
+        urlQueue.setCreateTime(System.currentTimeMillis());
+        return urlQueue;
+    }
+}
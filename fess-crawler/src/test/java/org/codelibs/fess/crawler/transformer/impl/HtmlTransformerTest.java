@@ -15,6 +15,9 @@
  */
 package org.codelibs.fess.crawler.transformer.impl;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Map;
 
 import org.codelibs.fess.crawler.Constants;
@@ -112,6 +115,30 @@ public class HtmlTransformerTest extends PlainTestCase {
                 .getChildUrlSet().iterator().next().getUrl());
     }
 
+    public void test_transform_fileWithHead() throws Exception {
+        final StringBuilder buf = new StringBuilder();
+        buf.append("<html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=EUC-JP\"></head><body>");
+        for (int i = 0; i < 300; i++) {
+            buf.append("<p>content</p>");
+        }
+        buf.append("<a href=\"test2.html\">test</a></body></html>");
+        final byte[] data = buf.toString().getBytes();
+        final File file = File.createTempFile("htmltransformer", ".html");
+        file.deleteOnExit();
+        Files.write(file.toPath(), data);
+        try (final ResponseData responseData = new ResponseData()) {
+            responseData.setUrl("http://hoge/test.html");
+            responseData.setResponseBody(file, true);
+            responseData.setResponseBodyHead(Arrays.copyOf(data, 4096));
+            responseData.setMimeType("text/html");
+            final ResultData resultData = htmlTransformer.transform(responseData);
+            assertEquals("EUC-JP", responseData.getCharSet());
+            assertEquals(data.length, resultData.getData().length);
+            assertEquals(1, resultData.getChildUrlSet().size());
+            assertEquals("http://hoge/test2.html", resultData.getChildUrlSet().iterator().next().getUrl());
+        }
+    }
+
     public void test_transform_null() {
         try {
             htmlTransformer.transform(null);
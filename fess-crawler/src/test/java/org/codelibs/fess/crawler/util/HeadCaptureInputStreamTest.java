@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.dbflute.utflute.core.PlainTestCase;
+
+/**
+ * @author shinsuke
+ *
+ */
+public class HeadCaptureInputStreamTest extends PlainTestCase {
+
+    public void test_drain() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final HeadCaptureInputStream in = new HeadCaptureInputStream(new ByteArrayInputStream("0123456789".getBytes()), out, 4)) {
+            assertEquals(10, in.drain());
+            assertEquals("0123", new String(in.getHead()));
+            assertEquals("0123456789", new String(out.toByteArray()));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    public void test_drain_maxLength() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] data = new byte[100000];
+        try (final HeadCaptureInputStream in = new HeadCaptureInputStream(new ByteArrayInputStream(data), out, 4)) {
+            final long size = in.drain(10000);
+            assertTrue(size > 10000);
+            assertTrue(size < data.length);
+            assertEquals(size, out.size());
+        }
+    }
+
+    public void test_markAndReset() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final HeadCaptureInputStream in = new HeadCaptureInputStream(new ByteArrayInputStream("0123456789".getBytes()), out, 4)) {
+            assertTrue(in.markSupported());
+            in.mark(6);
+            final byte[] buf = new byte[6];
+            assertEquals(6, in.read(buf, 0, 6));
+            assertEquals("012345", new String(buf));
+            in.reset();
+
+            assertEquals('0', in.read());
+            assertEquals(10, in.drain());
+            assertEquals("012345", new String(in.getHead()));
+            assertEquals("0123456789", new String(out.toByteArray()));
+        }
+    }
+
+    public void test_reset_invalid() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final HeadCaptureInputStream in = new HeadCaptureInputStream(new ByteArrayInputStream("0123456789".getBytes()), out, 2)) {
+            in.mark(2);
+            assertEquals(4, in.read(new byte[4], 0, 4));
+            try {
+                in.reset();
+                fail();
+            } catch (final IOException e) {
+                // ok
+            }
+            assertEquals(10, in.drain());
+            assertEquals("0123456789", new String(out.toByteArray()));
+        }
+    }
+}
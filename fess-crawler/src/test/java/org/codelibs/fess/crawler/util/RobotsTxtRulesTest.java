@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.util;
+
+import org.codelibs.fess.crawler.util.RobotsTxtRules.Result;
+import org.dbflute.utflute.core.PlainTestCase;
+
+public class RobotsTxtRulesTest extends PlainTestCase {
+
+    public void test_getHostUrl() {
+        assertEquals("http://example.com", RobotsTxtRules.getHostUrl("http://example.com/a/b.html"));
+        assertEquals("http://example.com:8080", RobotsTxtRules.getHostUrl("http://example.com:8080/"));
+        assertEquals("http://example.com", RobotsTxtRules.getHostUrl("http://example.com"));
+    }
+
+    public void test_match() {
+        final RobotsTxtRules rules = new RobotsTxtRules();
+        rules.addRules("http://a.com", new String[] { "/admin/", "/ad", "/private*.html", "/x$", "*.pdf" },
+                new String[] { "/admin/public/", "/ok" });
+        rules.addRules("http://b.com", new String[] { "/websvn/" }, new String[0]);
+
+        assertEquals(Result.DISALLOWED, rules.match("http://a.com/admin/x"));
+        assertEquals(Result.ALLOWED, rules.match("http://a.com/admin/public/y"));
+        assertEquals(Result.DISALLOWED, rules.match("http://a.com/adm"));
+        assertEquals(Result.DISALLOWED, rules.match("http://a.com/private/a.html"));
+        assertEquals(Result.NONE, rules.match("http://a.com/private/a.htm"));
+        assertEquals(Result.DISALLOWED, rules.match("http://a.com/x"));
+        assertEquals(Result.NONE, rules.match("http://a.com/xy"));
+        assertEquals(Result.DISALLOWED, rules.match("http://a.com/z/doc.pdf"));
+        assertEquals(Result.ALLOWED, rules.match("http://a.com/ok"));
+        assertEquals(Result.NONE, rules.match("http://a.com/"));
+        assertEquals(Result.DISALLOWED, rules.match("http://b.com/websvn/"));
+        assertEquals(Result.NONE, rules.match("http://b.com/web"));
+        assertEquals(Result.NONE, rules.match("http://c.com/admin/"));
+
+        rules.clear();
+        assertTrue(rules.isEmpty());
+        assertEquals(Result.NONE, rules.match("http://a.com/admin/x"));
+    }
+
+    public void test_match_replaced() {
+        final RobotsTxtRules rules = new RobotsTxtRules();
+        rules.addRules("http://a.com", new String[] { "/admin/" }, new String[0]);
+        assertEquals(Result.DISALLOWED, rules.match("http://a.com/admin/x"));
+        rules.addRules("http://a.com", new String[] { "/private/" }, new String[0]);
+        assertEquals(Result.NONE, rules.match("http://a.com/admin/x"));
+        assertEquals(Result.DISALLOWED, rules.match("http://a.com/private/x"));
+    }
+}
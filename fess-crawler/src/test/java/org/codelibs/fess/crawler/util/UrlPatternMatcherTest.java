@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012-2019 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.crawler.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.dbflute.utflute.core.PlainTestCase;
+
+public class UrlPatternMatcherTest extends PlainTestCase {
+
+    public void test_getLiteralPrefix() {
+        assertEquals("http://example", UrlPatternMatcher.getLiteralPrefix(Pattern.compile("http://example.com/.*")));
+        assertEquals("http://example.com/", UrlPatternMatcher.getLiteralPrefix(Pattern.compile("http://example\\.com/.*")));
+        assertEquals("http://bar.com/", UrlPatternMatcher.getLiteralPrefix(Pattern.compile("^http://bar\\.com/.*")));
+        assertEquals("http", UrlPatternMatcher.getLiteralPrefix(Pattern.compile("https?://foo.com/.*")));
+        assertEquals("http://a", UrlPatternMatcher.getLiteralPrefix(Pattern.compile("http://a+.com/")));
+        assertEquals("http://", UrlPatternMatcher.getLiteralPrefix(Pattern.compile("http://\\Qa.com\\E/.*")));
+        assertEquals("", UrlPatternMatcher.getLiteralPrefix(Pattern.compile(".*\\.pdf")));
+        assertEquals("", UrlPatternMatcher.getLiteralPrefix(Pattern.compile("http://a.com/|http://b.com/")));
+        assertEquals("", UrlPatternMatcher.getLiteralPrefix(Pattern.compile("(?i)http://a.com/.*")));
+        assertEquals("", UrlPatternMatcher.getLiteralPrefix(Pattern.compile("http://a.com/.*", Pattern.CASE_INSENSITIVE)));
+    }
+
+    public void test_matches() {
+        final String[] patterns = { "http://example.com/.*", "https?://foo.com/a.*", "^http://bar\\.com/x/.*", "(?i)http://CASE.com/.*",
+                ".*\\.pdf", "http://www.(a|b).com/", "http://qq\\.com/a*b", "http://\\Qlit.com\\E/.*", "http://x.com/(.)\\1.*",
+                "http://[a-z]+.org/" };
+        final String[] urls = { "http://example.com/x", "https://foo.com/abc", "http://foo.com/a", "http://bar.com/x/1",
+                "http://case.com/z", "http://z.com/doc.pdf", "http://www.b.com/", "http://qq.com/b", "http://qq.com/aab",
+                "http://lit.com/q", "http://x.com/aab", "http://x.com/abb", "http://abc.org/", "http://none/", "http://example.co" };
+
+        final List<Pattern> patternList = new ArrayList<>();
+        for (final String pattern : patterns) {
+            patternList.add(Pattern.compile(pattern));
+        }
+        final UrlPatternMatcher matcher = new UrlPatternMatcher(patternList);
+        for (final String url : urls) {
+            boolean expected = false;
+            for (final Pattern pattern : patternList) {
+                if (pattern.matcher(url).matches()) {
+                    expected = true;
+                }
+            }
+            assertEquals(url, expected, matcher.matches(url));
+        }
+    }
+
+    public void test_isCompiledFrom() {
+        final List<Pattern> patternList = new ArrayList<>();
+        patternList.add(Pattern.compile("http://example.com/.*"));
+        final UrlPatternMatcher matcher = new UrlPatternMatcher(patternList);
+        assertTrue(matcher.isCompiledFrom(patternList));
+        assertFalse(matcher.isCompiledFrom(new ArrayList<>(patternList)));
+        patternList.add(Pattern.compile("http://test.com/.*"));
+        assertFalse(matcher.isCompiledFrom(patternList));
+    }
+
+    public void test_empty() {
+        final UrlPatternMatcher matcher = new UrlPatternMatcher(new ArrayList<>());
+        assertTrue(matcher.isEmpty());
+        assertFalse(matcher.matches("http://example.com/"));
+    }
+}